@@ -0,0 +1,24 @@
+package com.mishima.sync.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the regex given as the first argument, or all of them, with the GC
+ * profiler attached so allocation per operation ({@code gc.alloc.rate.norm}) is reported alongside
+ * the timings.
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(args.length > 0? args[0]: "com\\.mishima\\.sync\\..*Benchmark")
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+
+}
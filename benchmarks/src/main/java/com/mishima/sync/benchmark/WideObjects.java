@@ -0,0 +1,118 @@
+package com.mishima.sync.benchmark;
+
+import static com.mishima.sync.util.OdsSchemaUtils.mapObjectNameToOdsColumnName;
+
+import com.google.gson.Gson;
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.ColumnMetadata;
+import com.mishima.sync.model.ColumnType;
+import com.mishima.sync.model.TableMetadata;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Synthetic Salesforce objects of a given width along with the matching ODS table. Fields cycle
+ * through the column types seen in practice, roughly one in ten has a name longer than 30
+ * characters so it is shortened when mapped to a column, and one in fifty is a CLOB.
+ */
+public class WideObjects {
+
+  public static final String OBJECT_TYPE = "Benchmark_Object__c";
+  public static final String TABLE_NAME = "benchmark_object__c";
+
+  private static final Gson GSON = new Gson();
+
+  public static String fieldName(int field) {
+    return field % 10 == 9? "f" + field + "_long_descriptive_field_name__c": "field_" + field + "__c";
+  }
+
+  public static TableMetadata table(int fieldCount) {
+    TreeSet<ColumnMetadata> columns = new TreeSet<>();
+    columns.add(column("id", "varchar2"));
+    for(int i = 1; i < fieldCount; i++) {
+      columns.add(column(mapObjectNameToOdsColumnName(fieldName(i)), dataType(i)));
+    }
+    return new TableMetadata(TABLE_NAME, columns);
+  }
+
+  public static Map<String,Object> payload(int fieldCount, String objectId) {
+    Map<String,Object> payload = new LinkedHashMap<>();
+    payload.put("id", objectId);
+    for(int i = 1; i < fieldCount; i++) {
+      payload.put(fieldName(i), value(i));
+    }
+    return payload;
+  }
+
+  public static ChangeCaptureEvent event(int fieldCount, String action, String userName, String objectId) {
+    Map<String,Object> payload = payload(fieldCount, objectId);
+    return ChangeCaptureEvent.builder()
+        .userName(userName)
+        .action(action)
+        .objectId(objectId)
+        .objectType(OBJECT_TYPE)
+        .objectName("Benchmark " + objectId)
+        .createdTime(new Date())
+        .newFieldValues("U".equals(action)? Map.of(fieldName(1), payload.get(fieldName(1))): null)
+        .fullPayload(payload)
+        .build();
+  }
+
+  public static List<ChangeCaptureEvent> events(int fieldCount, int count, String action, String userName) {
+    List<ChangeCaptureEvent> events = new ArrayList<>(count);
+    for(int i = 0; i < count; i++) {
+      events.add(event(fieldCount, action, userName, objectId(i)));
+    }
+    return events;
+  }
+
+  /**
+   * A message body as published by the change capture trigger.
+   */
+  public static String messageBody(int fieldCount, int count, String action, String userName) {
+    return GSON.toJson(events(fieldCount, count, action, userName));
+  }
+
+  public static String objectId(int i) {
+    return String.format("a0B%012d", i);
+  }
+
+  private static String dataType(int field) {
+    switch(field % 5) {
+      case 1:
+        return "number";
+      case 2:
+        return "timestamp(6)";
+      case 3:
+        return field % 50 == 3? "clob": "date";
+      default:
+        return "varchar2";
+    }
+  }
+
+  private static Object value(int field) {
+    switch(field % 5) {
+      case 1:
+        return field % 2 == 0? Boolean.TRUE: 1234.5 + field;
+      case 2:
+        return "2020-08-01T12:34:56.000Z";
+      case 3:
+        return field % 50 == 3? "Lorem ipsum dolor sit amet. ".repeat(40): "2020-08-01";
+      default:
+        return "Value of field " + field;
+    }
+  }
+
+  private static ColumnMetadata column(String columnName, String dataType) {
+    return ColumnMetadata.builder()
+        .columnName(columnName)
+        .dataType(dataType)
+        .columnType(ColumnType.fromDataType(dataType))
+        .build();
+  }
+
+}
@@ -0,0 +1,95 @@
+package com.mishima.sync.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.mishima.sync.benchmark.WideObjects;
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.TableMetadata;
+import com.mishima.sync.repository.OracleSchemaRegistry;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Decoding of a single-event message, through plain Gson data binding as a baseline and through
+ * the streaming decoder that maps the payload straight onto the table's columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+  private static final Type EVENT_LIST_TYPE = new TypeToken<List<ChangeCaptureEvent>>(){}.getType();
+
+  @Param({"50", "300", "800"})
+  private int fieldCount;
+
+  private final Gson gson = new Gson();
+  private final ChangeCaptureEventDecoder decoder = new ChangeCaptureEventDecoder();
+  private String body;
+
+  @Setup
+  public void setUp() {
+    body = WideObjects.messageBody(fieldCount, 1, "U", "someone@example.com");
+    inject("oracleSchemaRegistry", new FixedSchemaRegistry(WideObjects.table(fieldCount)));
+  }
+
+  @Benchmark
+  public List<ChangeCaptureEvent> gsonDataBinding() {
+    return gson.fromJson(body, EVENT_LIST_TYPE);
+  }
+
+  @Benchmark
+  public List<ChangeCaptureEvent> streamingDecoder() throws IOException {
+    return decoder.decode(new StringReader(body));
+  }
+
+  private void inject(String fieldName, Object value) {
+    Field field = ReflectionUtils.findField(ChangeCaptureEventDecoder.class, fieldName);
+    ReflectionUtils.makeAccessible(field);
+    ReflectionUtils.setField(field, decoder, value);
+  }
+
+  private static class FixedSchemaRegistry extends OracleSchemaRegistry {
+
+    private final TableMetadata table;
+
+    private FixedSchemaRegistry(TableMetadata table) {
+      this.table = table;
+    }
+
+    @Override
+    public TableMetadata getTable(String odsTableName) {
+      return getLoadedTable(odsTableName);
+    }
+
+    @Override
+    public TableMetadata getLoadedTable(String odsTableName) {
+      return table.getName().equals(odsTableName)? table: null;
+    }
+
+    @Override
+    public void reportUnknownColumn(String odsTableName, String columnName) {
+    }
+
+  }
+
+}
@@ -0,0 +1,92 @@
+package com.mishima.sync.repository;
+
+import static com.mishima.sync.util.OdsSchemaUtils.mapObjectNameToOdsColumnName;
+
+import com.mishima.sync.benchmark.WideObjects;
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.OdsRow;
+import com.mishima.sync.model.TableMetadata;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Work done by the repository before a statement reaches the driver: mapping the payload onto the
+ * table's columns, converting each value to its bind type, and generating INSERT and UPDATE SQL.
+ * Statement generation is normally cached per column shape, so its cost is paid once per shape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementBenchmark {
+
+  @Param({"50", "300", "800"})
+  private int fieldCount;
+
+  private final OracleRepository oracleRepository = new OracleRepository();
+  private TableMetadata table;
+  private ChangeCaptureEvent mapEvent;
+  private ChangeCaptureEvent rowEvent;
+  private Object[] rawValues;
+  private BitSet boundColumns;
+
+  @Setup
+  public void setUp() {
+    table = WideObjects.table(fieldCount);
+    mapEvent = WideObjects.event(fieldCount, "U", "someone@example.com", WideObjects.objectId(1));
+    rowEvent = WideObjects.event(fieldCount, "U", "someone@example.com", WideObjects.objectId(1));
+    Object[] values = oracleRepository.convertPayload(table, mapEvent);
+    rowEvent.setRow(new OdsRow(table, values));
+    rowEvent.setFullPayload(null);
+    boundColumns = oracleRepository.boundColumns(table, StatementType.UPDATE, values);
+    rawValues = new Object[table.size()];
+    mapEvent.getFullPayload().forEach((fieldName, value) ->
+        rawValues[table.indexOf(mapObjectNameToOdsColumnName(fieldName))] = value);
+  }
+
+  @Benchmark
+  public Object[] convertPayloadFromMap() {
+    return oracleRepository.convertPayload(table, mapEvent);
+  }
+
+  @Benchmark
+  public Object[] convertPayloadFromDecodedRow() {
+    return oracleRepository.convertPayload(table, rowEvent);
+  }
+
+  /**
+   * Per-value conversion to the column's bind type, which replaced the SQL-side wrapping of string
+   * parameters.
+   */
+  @Benchmark
+  public void convertValues(Blackhole blackhole) {
+    for(int i = 0; i < rawValues.length; i++) {
+      blackhole.consume(table.getColumn(i).getColumnType().convert(rawValues[i]));
+    }
+  }
+
+  @Benchmark
+  public StatementPlan buildInsert() {
+    return oracleRepository.buildStatementPlan(table, StatementType.INSERT, boundColumns, new BitSet());
+  }
+
+  @Benchmark
+  public StatementPlan buildUpdate() {
+    return oracleRepository.buildStatementPlan(table, StatementType.UPDATE, boundColumns, new BitSet());
+  }
+
+}
@@ -0,0 +1,53 @@
+package com.mishima.sync.startup;
+
+import com.mishima.sync.benchmark.WideObjects;
+import com.mishima.sync.model.ChangeCaptureEvent;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Detection of bulk-load messages, which scans every event of a message. Width does not affect it,
+ * so it is measured over the number of events per message instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchDetectionBenchmark {
+
+  @Param({"1", "100", "1000"})
+  private int eventCount;
+
+  private List<ChangeCaptureEvent> batchEvents;
+  private List<ChangeCaptureEvent> userEvents;
+
+  @Setup
+  public void setUp() {
+    batchEvents = WideObjects.events(50, eventCount, "C", "batch");
+    userEvents = WideObjects.events(50, eventCount, "U", "someone@example.com");
+  }
+
+  @Benchmark
+  public boolean batchMessage() {
+    return EventConsumerStartup.isBatchUpdate(batchEvents);
+  }
+
+  @Benchmark
+  public boolean userMessage() {
+    return EventConsumerStartup.isBatchUpdate(userEvents);
+  }
+
+}
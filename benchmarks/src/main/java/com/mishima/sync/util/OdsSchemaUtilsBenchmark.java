@@ -0,0 +1,52 @@
+package com.mishima.sync.util;
+
+import com.mishima.sync.benchmark.WideObjects;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Salesforce to ODS name mapping, applied to the object type once per event and to every field
+ * name of the payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OdsSchemaUtilsBenchmark {
+
+  @Param({"50", "300", "800"})
+  private int fieldCount;
+
+  private String[] fieldNames;
+
+  @Setup
+  public void setUp() {
+    fieldNames = WideObjects.payload(fieldCount, WideObjects.objectId(1)).keySet().toArray(new String[0]);
+  }
+
+  @Benchmark
+  public String mapObjectType() {
+    return OdsSchemaUtils.mapObjectTypeToOdsTableName(WideObjects.OBJECT_TYPE);
+  }
+
+  @Benchmark
+  public void mapFieldNames(Blackhole blackhole) {
+    for(String fieldName: fieldNames) {
+      blackhole.consume(OdsSchemaUtils.mapObjectNameToOdsColumnName(fieldName));
+    }
+  }
+
+}
@@ -1,18 +1,27 @@
 package com.mishima.sync.auth;
 
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.converter.json.GsonHttpMessageConverter;
 import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordAccessTokenProvider;
 import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordResourceDetails;
 import org.springframework.security.oauth2.common.AuthenticationScheme;
 
 public class OAuth2RestTemplateFactory {
 
+  /**
+   * Builds a template that sends both its token requests and its API requests through the given
+   * request factory, replacing its token the refresh margin before it expires.
+   */
   public static OAuth2RestTemplate oauth2RestTemplate(
           String tokenUri,
           String clientId,
           String clientSecret,
           String username,
-          String password) {
+          String password,
+          ClientHttpRequestFactory requestFactory,
+          long tokenLifetimeMillis,
+          long refreshMarginMillis) {
 
     ResourceOwnerPasswordResourceDetails resourceDetails = new ResourceOwnerPasswordResourceDetails();
     resourceDetails.setGrantType("password");
@@ -22,9 +31,13 @@ public class OAuth2RestTemplateFactory {
     resourceDetails.setClientSecret(clientSecret);
     resourceDetails.setUsername(username);
     resourceDetails.setPassword(password);
-    OAuth2RestTemplate template = new OAuth2RestTemplate(resourceDetails);
+    OAuth2RestTemplate template = new RefreshingOAuth2RestTemplate(resourceDetails, tokenLifetimeMillis, refreshMarginMillis);
+    template.setRequestFactory(requestFactory);
+    ResourceOwnerPasswordAccessTokenProvider accessTokenProvider = new ResourceOwnerPasswordAccessTokenProvider();
+    accessTokenProvider.setRequestFactory(requestFactory);
+    template.setAccessTokenProvider(accessTokenProvider);
     template.getMessageConverters().add(0, new GsonHttpMessageConverter());
     return template;
-  };
+  }
 
 }
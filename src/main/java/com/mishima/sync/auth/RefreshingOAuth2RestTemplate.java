@@ -0,0 +1,43 @@
+package com.mishima.sync.auth;
+
+import java.util.Date;
+import org.springframework.security.oauth2.client.OAuth2ClientContext;
+import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+/**
+ * OAuth2 template that treats its access token as expired shortly before it really expires, so the
+ * token is replaced between requests instead of a request failing on it. Salesforce does not
+ * return an expiry with its tokens, so tokens without one are given the configured lifetime.
+ */
+class RefreshingOAuth2RestTemplate extends OAuth2RestTemplate {
+
+  private final long tokenLifetimeMillis;
+  private final long refreshMarginMillis;
+
+  RefreshingOAuth2RestTemplate(OAuth2ProtectedResourceDetails resource, long tokenLifetimeMillis, long refreshMarginMillis) {
+    super(resource);
+    this.tokenLifetimeMillis = tokenLifetimeMillis;
+    this.refreshMarginMillis = refreshMarginMillis;
+  }
+
+  // Synchronized so concurrent requests on an expiring token exchange for a new one only once
+  @Override
+  public synchronized OAuth2AccessToken getAccessToken() {
+    return super.getAccessToken();
+  }
+
+  @Override
+  protected OAuth2AccessToken acquireAccessToken(OAuth2ClientContext oauth2Context) {
+    OAuth2AccessToken token = super.acquireAccessToken(oauth2Context);
+    if(token instanceof DefaultOAuth2AccessToken) {
+      long now = System.currentTimeMillis();
+      long expiresAt = token.getExpiration() == null? now + tokenLifetimeMillis: token.getExpiration().getTime();
+      ((DefaultOAuth2AccessToken)token).setExpiration(new Date(Math.max(now, expiresAt - refreshMarginMillis)));
+    }
+    return token;
+  }
+
+}
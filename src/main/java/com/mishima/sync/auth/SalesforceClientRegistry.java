@@ -0,0 +1,116 @@
+package com.mishima.sync.auth;
+
+import com.mishima.sync.cache.ExpiringCache;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordResourceDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ * Salesforce clients shared across requests, one per token URI, client id and username, so the
+ * access token of each is reused until shortly before it expires. Every client sends its requests
+ * through one pooled HTTP client that keeps connections alive and accepts gzip responses. Clients
+ * come from credentials in request bodies, so they are held in a cache bounded by size and idle
+ * time rather than kept forever.
+ */
+@Component
+@Slf4j
+public class SalesforceClientRegistry {
+
+  private final CloseableHttpClient httpClient;
+  private final HttpComponentsClientHttpRequestFactory requestFactory;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final long tokenLifetimeMillis;
+  private final long refreshMarginMillis;
+
+  private final ExpiringCache<ClientKey, OAuth2RestTemplate> templates;
+
+  public SalesforceClientRegistry(
+      @Value("${salesforce.http.max-connections:50}") int maxConnections,
+      @Value("${salesforce.http.connect-timeout-ms:5000}") int connectTimeoutMillis,
+      @Value("${salesforce.http.read-timeout-ms:120000}") int readTimeoutMillis,
+      @Value("${salesforce.http.idle-timeout-ms:30000}") long idleTimeoutMillis,
+      @Value("${salesforce.token.lifetime-minutes:120}") long tokenLifetimeMinutes,
+      @Value("${salesforce.token.refresh-margin-seconds:300}") long refreshMarginSeconds,
+      @Value("${salesforce.client-cache.max-size:100}") long maxClients,
+      @Value("${salesforce.client-cache.idle-minutes:180}") long clientIdleMinutes) {
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    // Nearly every request goes to the same instance, so let it use the whole pool
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    connectionManager.setValidateAfterInactivity(2000);
+    // Content compression is on by default, requests accept gzip and responses are decoded transparently
+    httpClient = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectTimeout(connectTimeoutMillis)
+            .setConnectionRequestTimeout(connectTimeoutMillis)
+            .setSocketTimeout(readTimeoutMillis)
+            .build())
+        .evictExpiredConnections()
+        .evictIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+        .build();
+    requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+    this.tokenLifetimeMillis = TimeUnit.MINUTES.toMillis(tokenLifetimeMinutes);
+    this.refreshMarginMillis = TimeUnit.SECONDS.toMillis(refreshMarginSeconds);
+    this.templates = new ExpiringCache<>("salesforce-clients", maxClients, TimeUnit.MINUTES.toMillis(clientIdleMinutes));
+  }
+
+  /**
+   * Returns the client for the given credentials, creating it on first use or when the secret or
+   * password has changed since the client was created.
+   */
+  public synchronized OAuth2RestTemplate getTemplate(String tokenUri, String clientId, String clientSecret, String username,
+      String password) {
+    ClientKey key = new ClientKey(tokenUri, clientId, username);
+    OAuth2RestTemplate template = templates.get(key);
+    if(template == null || !sameSecrets((ResourceOwnerPasswordResourceDetails)template.getResource(), clientSecret, password)) {
+      log.info("Creating Salesforce client for {} at {}", username, tokenUri);
+      template = OAuth2RestTemplateFactory.oauth2RestTemplate(tokenUri, clientId, clientSecret, username, password,
+          requestFactory, tokenLifetimeMillis, refreshMarginMillis);
+    }
+    // Written back on every use, so only clients left idle expire
+    templates.put(key, template);
+    return template;
+  }
+
+  public int getLeasedConnections() {
+    return connectionManager.getTotalStats().getLeased();
+  }
+
+  public int getAvailableConnections() {
+    return connectionManager.getTotalStats().getAvailable();
+  }
+
+  @PreDestroy
+  public void destroy() throws IOException {
+    httpClient.close();
+  }
+
+  private static boolean sameSecrets(ResourceOwnerPasswordResourceDetails resource, String clientSecret, String password) {
+    return Objects.equals(resource.getClientSecret(), clientSecret) && Objects.equals(resource.getPassword(), password);
+  }
+
+  @AllArgsConstructor
+  @EqualsAndHashCode
+  private static class ClientKey {
+
+    private final String tokenUri;
+    private final String clientId;
+    private final String username;
+
+  }
+
+}
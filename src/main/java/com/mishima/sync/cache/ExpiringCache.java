@@ -0,0 +1,119 @@
+package com.mishima.sync.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Cache bounded by both size and time to live. Entries expire a fixed time after they were last
+ * written; when the cache is full the oldest writes are evicted first. Entries are kept in write
+ * order under a lock, so expired entries are removed lazily on reads and from the head on every
+ * write, and no background thread is needed.
+ */
+public class ExpiringCache<K,V> {
+
+  @Getter
+  private final String name;
+  private final long maxSize;
+  private final long ttlMillis;
+  private final LongSupplier clock;
+
+  // Entries in the order they were last written, which is also the order in which they expire
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public ExpiringCache(String name, long maxSize, long ttlMillis) {
+    this(name, maxSize, ttlMillis, System::currentTimeMillis);
+  }
+
+  public ExpiringCache(String name, long maxSize, long ttlMillis, LongSupplier clock) {
+    this.name = name;
+    this.maxSize = maxSize;
+    this.ttlMillis = ttlMillis;
+    this.clock = clock;
+  }
+
+  public V get(K key) {
+    synchronized(entries) {
+      Entry<V> entry = entries.get(key);
+      if(entry == null) {
+        misses.increment();
+        return null;
+      }
+      if(entry.expiresAt <= clock.getAsLong()) {
+        entries.remove(key);
+        evictions.increment();
+        misses.increment();
+        return null;
+      }
+      hits.increment();
+      return entry.value;
+    }
+  }
+
+  public boolean contains(K key) {
+    return get(key) != null;
+  }
+
+  public void put(K key, V value) {
+    Entry<V> entry = new Entry<>(value, clock.getAsLong() + ttlMillis);
+    synchronized(entries) {
+      // Removed first so an overwrite moves to the end of the write order
+      entries.remove(key);
+      entries.put(key, entry);
+      evict();
+    }
+  }
+
+  public void remove(K key) {
+    synchronized(entries) {
+      entries.remove(key);
+    }
+  }
+
+  public long size() {
+    synchronized(entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  private void evict() {
+    long now = clock.getAsLong();
+    Iterator<Entry<V>> oldest = entries.values().iterator();
+    while(oldest.hasNext()) {
+      Entry<V> entry = oldest.next();
+      if(entry.expiresAt > now && entries.size() <= maxSize) {
+        break;
+      }
+      oldest.remove();
+      evictions.increment();
+    }
+  }
+
+  @AllArgsConstructor
+  private static class Entry<V> {
+
+    private final V value;
+    private final long expiresAt;
+
+  }
+
+}
@@ -0,0 +1,370 @@
+package com.mishima.sync.codec;
+
+import static com.mishima.sync.util.OdsSchemaUtils.mapObjectNameToOdsColumnName;
+import static com.mishima.sync.util.OdsSchemaUtils.mapObjectTypeToOdsTableName;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.ColumnType;
+import com.mishima.sync.model.OdsRow;
+import com.mishima.sync.model.TableMetadata;
+import com.mishima.sync.repository.OracleSchemaRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Streaming decoder for change capture messages. Events are read one at a time and the full payload
+ * is written straight into an {@link OdsRow} for the target table, mapping Salesforce field names
+ * to ODS column names, converting values to their column types and dropping fields that have no
+ * column in the cached schema. A value that cannot be converted to its column's type does not fail
+ * the message; the event is decoded without it and carries the reason in its conversion error.
+ *
+ * <p>Besides a JSON array of events, a body may be in the columnar format, where events are grouped
+ * by object type and each group names its fields once, with every event holding just their values:
+ *
+ * <pre>
+ * [{"objectType": "Invoice__c", "fields": ["Id", "Amount__c"],
+ *   "events": [{"action": "U", "objectId": "a00...", "createdDate": "...", "values": ["a00...", 12.5]}]}]
+ * </pre>
+ *
+ * Either format may be gzipped and base64 encoded, signalled by the message attributes named below.
+ */
+@Component
+@Profile("!test")
+@Slf4j
+public class ChangeCaptureEventDecoder {
+
+  @Autowired
+  private OracleSchemaRegistry oracleSchemaRegistry;
+
+  private final Gson gson = new Gson();
+  private final TypeAdapter<Date> dateAdapter = gson.getAdapter(Date.class);
+  private final TypeAdapter<Map<String,Object>> mapAdapter = gson.getAdapter(new TypeToken<Map<String,Object>>(){});
+
+  public static final String CONTENT_TYPE_ATTRIBUTE = "contentType";
+  public static final String CONTENT_ENCODING_ATTRIBUTE = "contentEncoding";
+
+  public static final String CONTENT_TYPE_JSON = "application/json";
+  public static final String CONTENT_TYPE_COLUMNAR = "application/vnd.sync.columnar+json";
+  public static final String CONTENT_ENCODING_GZIP = "gzip";
+
+  // Salesforce field name to ODS column name, the mapping is pure so it is computed once per field
+  private final Map<String,String> columnNames = new ConcurrentHashMap<>();
+
+  /**
+   * Decodes a message body of the given content type and encoding, either of which may be null for
+   * a plain JSON body. Compressed bodies are inflated as they are parsed rather than up front.
+   */
+  public List<ChangeCaptureEvent> decode(String body, String contentType, String contentEncoding) throws IOException {
+    List<ChangeCaptureEvent> events = new ArrayList<>();
+    try(Reader reader = open(body, contentEncoding)) {
+      if(contentType == null || CONTENT_TYPE_JSON.equals(contentType)) {
+        decode(reader, events::add);
+      } else if(CONTENT_TYPE_COLUMNAR.equals(contentType)) {
+        decodeColumnar(reader, events::add);
+      } else {
+        throw new IOException("Unsupported content type " + contentType);
+      }
+    }
+    return events;
+  }
+
+  public List<ChangeCaptureEvent> decode(Reader reader) throws IOException {
+    List<ChangeCaptureEvent> events = new ArrayList<>();
+    decode(reader, events::add);
+    return events;
+  }
+
+  public void decode(Reader reader, Consumer<ChangeCaptureEvent> consumer) throws IOException {
+    JsonReader jsonReader = new JsonReader(reader);
+    jsonReader.beginArray();
+    while(jsonReader.hasNext()) {
+      consumer.accept(readEvent(jsonReader));
+    }
+    jsonReader.endArray();
+  }
+
+  public void decodeColumnar(Reader reader, Consumer<ChangeCaptureEvent> consumer) throws IOException {
+    JsonReader jsonReader = new JsonReader(reader);
+    jsonReader.beginArray();
+    while(jsonReader.hasNext()) {
+      readGroup(jsonReader, consumer);
+    }
+    jsonReader.endArray();
+  }
+
+  private static Reader open(String body, String contentEncoding) throws IOException {
+    if(contentEncoding == null) {
+      return new StringReader(body);
+    } else if(CONTENT_ENCODING_GZIP.equals(contentEncoding)) {
+      // Base64 is ASCII, so the body's characters are its bytes
+      InputStream compressed = Base64.getMimeDecoder().wrap(new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)));
+      return new InputStreamReader(new GZIPInputStream(compressed), StandardCharsets.UTF_8);
+    }
+    throw new IOException("Unsupported content encoding " + contentEncoding);
+  }
+
+  // The object type and fields must come before the events, so each value can go straight to its column
+  private void readGroup(JsonReader reader, Consumer<ChangeCaptureEvent> consumer) throws IOException {
+    Group group = new Group();
+    reader.beginObject();
+    while(reader.hasNext()) {
+      switch(reader.nextName()) {
+        case "objectType":
+          group.objectType = reader.nextString();
+          group.table = oracleSchemaRegistry.getTable(mapObjectTypeToOdsTableName(group.objectType));
+          break;
+        case "fields":
+          reader.beginArray();
+          while(reader.hasNext()) {
+            group.fields.add(reader.nextString());
+          }
+          reader.endArray();
+          group.fieldsRead = true;
+          break;
+        case "events":
+          if(group.objectType == null) {
+            throw new IOException("Columnar group has events before its object type");
+          }
+          if(!group.fieldsRead) {
+            throw new IOException("Columnar group of " + group.objectType + " has events before its fields");
+          }
+          group.mapColumns();
+          reader.beginArray();
+          while(reader.hasNext()) {
+            consumer.accept(readEvent(reader, group));
+          }
+          reader.endArray();
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+  }
+
+  private ChangeCaptureEvent readEvent(JsonReader reader) throws IOException {
+    return readEvent(reader, null);
+  }
+
+  private ChangeCaptureEvent readEvent(JsonReader reader, Group group) throws IOException {
+    ChangeCaptureEvent.ChangeCaptureEventBuilder builder = ChangeCaptureEvent.builder();
+    TableMetadata table = null;
+    Map<String,Object> fullPayload = null;
+    OdsRow row = null;
+    boolean valuesRead = false;
+    List<String> conversionErrors = new ArrayList<>();
+    if(group != null) {
+      builder.objectType(group.objectType);
+      table = group.table;
+    }
+    reader.beginObject();
+    while(reader.hasNext()) {
+      String name = reader.nextName();
+      if(reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+        continue;
+      }
+      switch(name) {
+        case "userName":
+          builder.userName(reader.nextString());
+          break;
+        case "action":
+          builder.action(reader.nextString());
+          break;
+        case "objectId":
+          builder.objectId(reader.nextString());
+          break;
+        case "objectType":
+          String objectType = reader.nextString();
+          builder.objectType(objectType);
+          table = oracleSchemaRegistry.getTable(mapObjectTypeToOdsTableName(objectType));
+          break;
+        case "objectName":
+          builder.objectName(reader.nextString());
+          break;
+        case "createdDate":
+          builder.createdTime(dateAdapter.read(reader));
+          break;
+        case "oldFieldValues":
+          builder.oldFieldValues(mapAdapter.read(reader));
+          break;
+        case "newFieldValues":
+          builder.newFieldValues(mapAdapter.read(reader));
+          break;
+        case "fullPayload":
+          if(table != null) {
+            row = readRow(reader, table, conversionErrors);
+          } else {
+            // Object type not seen yet, keep the payload as a map and map it once the type is known
+            fullPayload = mapAdapter.read(reader);
+          }
+          break;
+        case "values":
+          if(group == null) {
+            reader.skipValue();
+          } else if(table != null) {
+            row = readValues(reader, group, conversionErrors);
+          } else {
+            fullPayload = readPayload(reader, group);
+          }
+          valuesRead = group != null;
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if(group != null && !valuesRead) {
+      throw new IOException("Columnar event of " + group.objectType + " has no values");
+    }
+    if(row == null && fullPayload != null && table != null) {
+      row = toRow(fullPayload, table, conversionErrors);
+      fullPayload = null;
+    }
+    return builder.fullPayload(fullPayload).row(row)
+        .conversionError(conversionErrors.isEmpty()? null: String.join(", ", conversionErrors)).build();
+  }
+
+  private OdsRow readRow(JsonReader reader, TableMetadata table, List<String> conversionErrors) throws IOException {
+    OdsRow row = new OdsRow(table);
+    reader.beginObject();
+    while(reader.hasNext()) {
+      String columnName = columnName(reader.nextName());
+      int column = table.indexOf(columnName);
+      if(column < 0) {
+        oracleSchemaRegistry.reportUnknownColumn(table.getName(), columnName);
+        reader.skipValue();
+      } else {
+        row.getValues()[column] = convert(table, column, readValue(reader), conversionErrors);
+      }
+    }
+    reader.endObject();
+    return row;
+  }
+
+  private OdsRow readValues(JsonReader reader, Group group, List<String> conversionErrors) throws IOException {
+    OdsRow row = new OdsRow(group.table);
+    reader.beginArray();
+    for(int i = 0; reader.hasNext(); i++) {
+      int column = i < group.columns.length? group.columns[i]: -1;
+      if(column < 0) {
+        reader.skipValue();
+      } else {
+        row.getValues()[column] = convert(group.table, column, readValue(reader), conversionErrors);
+      }
+    }
+    reader.endArray();
+    return row;
+  }
+
+  // Without a table the values are kept by field name, as the payload of a plain JSON event would be
+  private Map<String,Object> readPayload(JsonReader reader, Group group) throws IOException {
+    Map<String,Object> payload = new HashMap<>();
+    reader.beginArray();
+    for(int i = 0; reader.hasNext(); i++) {
+      if(i < group.fields.size()) {
+        payload.put(group.fields.get(i), readValue(reader));
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endArray();
+    return payload;
+  }
+
+  private Object readValue(JsonReader reader) throws IOException {
+    switch(reader.peek()) {
+      case NULL:
+        reader.nextNull();
+        return null;
+      case BOOLEAN:
+        return reader.nextBoolean()? 1: 0;
+      case NUMBER:
+        return new BigDecimal(reader.nextString());
+      case STRING:
+        return reader.nextString();
+      default:
+        // Compound fields have no single column representation
+        reader.skipValue();
+        return null;
+    }
+  }
+
+  private OdsRow toRow(Map<String,Object> payload, TableMetadata table, List<String> conversionErrors) {
+    OdsRow row = new OdsRow(table);
+    payload.forEach((name, value) -> {
+      int column = table.indexOf(columnName(name));
+      if(column >= 0) {
+        row.getValues()[column] = convert(table, column, value, conversionErrors);
+      }
+    });
+    return row;
+  }
+
+  // The value has already been read, so a failed conversion leaves the reader in step with the message
+  private Object convert(TableMetadata table, int column, Object value, List<String> conversionErrors) {
+    ColumnType columnType = table.getColumn(column).getColumnType();
+    try {
+      return columnType.convert(value);
+    } catch(RuntimeException ex) {
+      conversionErrors.add(table.getColumn(column).getColumnName() + " value " + value + " is not a valid "
+          + columnType + " (" + ex.getMessage() + ")");
+      return null;
+    }
+  }
+
+  private String columnName(String fieldName) {
+    return columnNames.computeIfAbsent(fieldName, name -> mapObjectNameToOdsColumnName(name));
+  }
+
+  // Object type and field list shared by the events of a columnar group
+  private class Group {
+
+    private String objectType;
+    private TableMetadata table;
+    private final List<String> fields = new ArrayList<>();
+    private boolean fieldsRead;
+    // Column position of each field, -1 for fields without a column
+    private int[] columns = new int[0];
+
+    private void mapColumns() {
+      if(table == null) {
+        return;
+      }
+      columns = new int[fields.size()];
+      for(int i = 0; i < columns.length; i++) {
+        String columnName = columnName(fields.get(i));
+        columns[i] = table.indexOf(columnName);
+        if(columns[i] < 0) {
+          oracleSchemaRegistry.reportUnknownColumn(table.getName(), columnName);
+        }
+      }
+    }
+
+  }
+
+}
@@ -3,10 +3,10 @@ package com.mishima.sync.config;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.regions.Regions;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
-import com.mishima.sync.auth.OAuth2RestTemplateFactory;
+import com.mishima.sync.auth.SalesforceClientRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -22,25 +22,36 @@ public class Config {
   @Value("${aws.secretKey}")
   private String awsSecretKey;
 
+  @Value("${aws.region}")
+  private String awsRegion;
+
+  // Optional endpoint override to point the consumer at a local SQS stand-in such as ElasticMQ
+  @Value("${sqs.endpoint:}")
+  private String sqsEndpoint;
+
   @Bean
   public AmazonSQS amazonSQS() {
     AWSCredentialsProvider awsCredentialsProvider = new AWSStaticCredentialsProvider(new BasicAWSCredentials(awsAccessKey, awsSecretKey));
-    return AmazonSQSClientBuilder.standard()
-        .withCredentials(awsCredentialsProvider)
-        .withRegion(Regions.US_EAST_1)
-        .build();
+    AmazonSQSClientBuilder builder = AmazonSQSClientBuilder.standard()
+        .withCredentials(awsCredentialsProvider);
+    if(sqsEndpoint.isEmpty()) {
+      builder.withRegion(awsRegion);
+    } else {
+      builder.withEndpointConfiguration(new EndpointConfiguration(sqsEndpoint, awsRegion));
+    }
+    return builder.build();
   }
 
   @Bean
   @Profile("test")
   public OAuth2RestTemplate restTemplate(
+      SalesforceClientRegistry salesforceClientRegistry,
       @Value("${oauth.tokenuri}") String tokenUri,
       @Value("${oauth.clientId}") String clientId,
       @Value("${oauth.clientSecret}") String clientSecret,
       @Value("${oauth.username}") String username,
       @Value("${oauth.password}") String password) {
-    return OAuth2RestTemplateFactory
-        .oauth2RestTemplate(tokenUri, clientId, clientSecret, username, password);
+    return salesforceClientRegistry.getTemplate(tokenUri, clientId, clientSecret, username, password);
   }
 
 }
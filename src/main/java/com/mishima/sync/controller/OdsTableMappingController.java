@@ -1,37 +1,135 @@
 package com.mishima.sync.controller;
 
-import com.mishima.sync.auth.OAuth2RestTemplateFactory;
+import com.mishima.sync.auth.SalesforceClientRegistry;
+import com.mishima.sync.model.OracleSchemaBatchRequest;
 import com.mishima.sync.model.OracleTableDefinition;
 import com.mishima.sync.model.OracleTableSchemaRequest;
 import com.mishima.sync.model.SalesforceObjectDescribe;
+import com.mishima.sync.service.SalesforceDescribeCache;
 import com.mishima.sync.service.SalesforceObjectSchemaService;
 import com.mishima.sync.util.OdsSchemaUtils;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.security.oauth2.client.OAuth2RestTemplate;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @Slf4j
 public class OdsTableMappingController {
 
+  // Maximum describe calls in flight to Salesforce across all batch requests
+  @Value("${ods.ddl.describe-parallelism:8}")
+  private int describeParallelism;
+
+  @Autowired
+  private SalesforceDescribeCache describeCache;
+
+  @Autowired
+  private SalesforceClientRegistry salesforceClientRegistry;
+
+  private ExecutorService describeExecutor;
+
+  @PostConstruct
+  public void init() {
+    describeExecutor = Executors.newFixedThreadPool(describeParallelism);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    describeExecutor.shutdownNow();
+  }
+
   @RequestMapping(value = "/ods/ddl/generate", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
   public String generateOdsTableSchema(@RequestBody OracleTableSchemaRequest oracleTableSchemaRequest) {
     log.info("Generating ods table defintion for object {}", oracleTableSchemaRequest.getObjectName());
-    OAuth2RestTemplate template = OAuth2RestTemplateFactory.oauth2RestTemplate(
+    OAuth2RestTemplate template = salesforceClientRegistry.getTemplate(
         oracleTableSchemaRequest.getTokenUri(),
         oracleTableSchemaRequest.getClientId(),
         oracleTableSchemaRequest.getClientSecret(),
         oracleTableSchemaRequest.getUsername(),
         oracleTableSchemaRequest.getPassword());
     SalesforceObjectSchemaService service = new SalesforceObjectSchemaService(template, oracleTableSchemaRequest
-        .getSalesforceBaseUri());
+        .getSalesforceBaseUri(), describeCache, oracleTableSchemaRequest.getUsername());
     SalesforceObjectDescribe describe = service.extractSchemaForObject(oracleTableSchemaRequest.getObjectName());
     OracleTableDefinition oracleTableDefinition = OdsSchemaUtils.mapToOdsTableDefinition(describe);
     return oracleTableDefinition.generateDDL();
   }
 
+  /**
+   * Generates the DDL for many objects at once, describing them concurrently and streaming each
+   * table definition back as soon as its describe completes. An object that fails to describe is
+   * reported as a comment in the script rather than failing the whole batch. Only a complete script
+   * ends with the END SCRIPT line.
+   */
+  @RequestMapping(value = "/ods/ddl/generate/batch", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
+  public StreamingResponseBody generateOdsTableSchemas(@RequestBody OracleSchemaBatchRequest request) {
+    OAuth2RestTemplate template = salesforceClientRegistry.getTemplate(
+        request.getTokenUri(),
+        request.getClientId(),
+        request.getClientSecret(),
+        request.getUsername(),
+        request.getPassword());
+    // Exchange for a token once up front rather than in every concurrent describe
+    template.getAccessToken();
+    SalesforceObjectSchemaService service = new SalesforceObjectSchemaService(template, request.getSalesforceBaseUri(), describeCache,
+        request.getUsername());
+    List<String> objectNames = request.isAllCustomObjects()? service.listCustomObjects(): request.getObjectNames();
+    log.info("Generating ods table definitions for {} objects", objectNames.size());
+    return out -> {
+      CompletionService<String> completions = new ExecutorCompletionService<>(describeExecutor);
+      List<Future<String>> futures = new ArrayList<>();
+      objectNames.forEach(objectName -> futures.add(completions.submit(() -> generateDDL(service, objectName))));
+      Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+      int written = 0;
+      try {
+        writer.write("-- ODS TABLES FOR " + objectNames.size() + " OBJECTS\n");
+        writer.flush();
+        for(; written < objectNames.size(); written++) {
+          writer.write("\n\n" + completions.take().get() + "\n");
+          writer.flush();
+        }
+        writer.write("\n-- END SCRIPT\n");
+      } catch(InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        // No END line, so a truncated script cannot pass for a complete one
+        writer.write("\n-- INCOMPLETE SCRIPT, INTERRUPTED AFTER " + written + " OF " + objectNames.size() + " OBJECTS\n");
+      } catch(ExecutionException ex) {
+        // Never thrown, generateDDL reports failures in the script
+        throw new IllegalStateException(ex.getCause());
+      } finally {
+        // Describes no longer waited on would otherwise keep the shared pool busy
+        futures.forEach(future -> future.cancel(true));
+      }
+      writer.flush();
+    };
+  }
+
+  private String generateDDL(SalesforceObjectSchemaService service, String objectName) {
+    try {
+      return OdsSchemaUtils.mapToOdsTableDefinition(service.extractSchemaForObject(objectName)).generateDDL();
+    } catch(Exception ex) {
+      log.error("Error generating ods table definition for object {} -> {}", objectName, ex.getMessage());
+      return "-- FAILED TO GENERATE " + objectName + ": " + String.valueOf(ex.getMessage()).replace('\n', ' ');
+    }
+  }
+
 }
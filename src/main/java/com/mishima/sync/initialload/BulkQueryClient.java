@@ -0,0 +1,103 @@
+package com.mishima.sync.initialload;
+
+import com.mishima.sync.model.BulkQueryJob;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Client for Salesforce Bulk API 2.0 query jobs. Results are read a page at a time, each page
+ * being CSV with its own header row, and the locator returned with a page fetches the next one.
+ */
+@Slf4j
+public class BulkQueryClient {
+
+  private static final String JOBS_PATH = "/services/data/v47.0/jobs/query";
+  private static final String LOCATOR_HEADER = "Sforce-Locator";
+
+  private final RestTemplate restTemplate;
+  private final String instanceUri;
+  private final long pollIntervalMillis;
+
+  public BulkQueryClient(RestTemplate restTemplate, String instanceUri, long pollIntervalMillis) {
+    this.restTemplate = restTemplate;
+    this.instanceUri = instanceUri;
+    this.pollIntervalMillis = pollIntervalMillis;
+  }
+
+  @FunctionalInterface
+  public interface PageHandler {
+
+    void handle(Reader csv) throws IOException;
+
+  }
+
+  public BulkQueryJob createQueryJob(String soql) {
+    Map<String,String> request = new LinkedHashMap<>();
+    request.put("operation", "query");
+    request.put("query", soql);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_JSON);
+    BulkQueryJob job = restTemplate.postForObject(instanceUri + JOBS_PATH, new HttpEntity<>(request, headers), BulkQueryJob.class);
+    log.info("Created bulk query job {} for {}", job.getId(), soql.length() > 200? soql.substring(0, 200) + "...": soql);
+    return job;
+  }
+
+  public BulkQueryJob getJob(String jobId) {
+    return restTemplate.getForObject(instanceUri + JOBS_PATH + "/" + jobId, BulkQueryJob.class);
+  }
+
+  /**
+   * Waits for the job to finish, failing if Salesforce fails or aborts it.
+   */
+  public BulkQueryJob awaitCompletion(String jobId) throws InterruptedException {
+    while(true) {
+      BulkQueryJob job = getJob(jobId);
+      switch(job.getState()) {
+        case "JobComplete":
+          log.info("Bulk query job {} complete with {} records", jobId, job.getNumberRecordsProcessed());
+          return job;
+        case "Failed":
+        case "Aborted":
+          throw new IllegalStateException("Bulk query job " + jobId + " " + job.getState().toLowerCase() + ": " + job.getErrorMessage());
+        default:
+          log.debug("Bulk query job {} is {}", jobId, job.getState());
+          TimeUnit.MILLISECONDS.sleep(pollIntervalMillis);
+      }
+    }
+  }
+
+  /**
+   * Streams one page of results to the handler, returning the locator of the next page or null
+   * after the last page.
+   */
+  public String readResults(String jobId, String locator, int maxRecords, PageHandler handler) {
+    UriComponentsBuilder uri = UriComponentsBuilder.fromHttpUrl(instanceUri + JOBS_PATH + "/" + jobId + "/results")
+        .queryParam("maxRecords", maxRecords);
+    if(locator != null) {
+      uri.queryParam("locator", locator);
+    }
+    return restTemplate.execute(uri.build().toUri(), HttpMethod.GET,
+        request -> request.getHeaders().setAccept(Collections.singletonList(new MediaType("text", "csv"))),
+        response -> {
+          try(Reader reader = new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)) {
+            handler.handle(reader);
+          }
+          String next = response.getHeaders().getFirst(LOCATOR_HEADER);
+          return next == null || next.isEmpty() || "null".equals(next)? null: next;
+        });
+  }
+
+}
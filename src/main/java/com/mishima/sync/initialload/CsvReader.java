@@ -0,0 +1,106 @@
+package com.mishima.sync.initialload;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for RFC 4180 CSV as produced by Salesforce exports. Quoted fields may contain
+ * delimiters, doubled quotes and line breaks. Unquoted empty fields are read as null, which is how
+ * the Bulk API writes null values, while a quoted empty field is an empty string.
+ */
+public class CsvReader implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Reader reader;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private final StringBuilder field = new StringBuilder();
+  private int position;
+  private int limit;
+  private int fieldsPerRecord = 16;
+
+  public CsvReader(Reader reader) {
+    this.reader = reader;
+  }
+
+  /**
+   * Returns the fields of the next record, or null at the end of the input.
+   */
+  public String[] readRecord() throws IOException {
+    int c = read();
+    if(c == -1) {
+      return null;
+    }
+    List<String> fields = new ArrayList<>(fieldsPerRecord);
+    while(true) {
+      field.setLength(0);
+      boolean quoted = c == '"';
+      if(quoted) {
+        while(true) {
+          c = read();
+          if(c == -1) {
+            throw new EOFException("End of input inside a quoted field");
+          } else if(c == '"') {
+            c = read();
+            if(c != '"') {
+              break;
+            }
+          }
+          field.append((char)c);
+        }
+      } else {
+        while(c != ',' && c != '\n' && c != '\r' && c != -1) {
+          field.append((char)c);
+          c = read();
+        }
+      }
+      fields.add(quoted || field.length() > 0? field.toString(): null);
+      if(c == ',') {
+        c = read();
+      } else {
+        if(c == '\r' && peek() == '\n') {
+          read();
+        }
+        fieldsPerRecord = fields.size();
+        return fields.toArray(new String[0]);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  private int read() throws IOException {
+    if(position == limit && !fill()) {
+      return -1;
+    }
+    return buffer[position++];
+  }
+
+  private int peek() throws IOException {
+    if(position == limit && !fill()) {
+      return -1;
+    }
+    return buffer[position];
+  }
+
+  private boolean fill() throws IOException {
+    int read;
+    do {
+      read = reader.read(buffer, 0, buffer.length);
+    } while(read == 0);
+    if(read < 0) {
+      return false;
+    }
+    position = 0;
+    limit = read;
+    return true;
+  }
+
+}
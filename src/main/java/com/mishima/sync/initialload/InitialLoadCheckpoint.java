@@ -0,0 +1,63 @@
+package com.mishima.sync.initialload;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Position up to which an initial load has been committed. Records are identified by the page
+ * they were read from and their offset within it, the page being a Bulk API results locator, or
+ * empty for the first page and for a CSV file. Every record before the position is in Oracle.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class InitialLoadCheckpoint {
+
+  // Bulk query job id or CSV file the load reads from
+  private final String source;
+  private final String locator;
+  private final long offset;
+  private final long rowsLoaded;
+  private final boolean complete;
+
+  public static InitialLoadCheckpoint read(Path path) throws IOException {
+    if(!Files.exists(path)) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try(Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    return new InitialLoadCheckpoint(properties.getProperty("source"), properties.getProperty("locator", ""),
+        Long.parseLong(properties.getProperty("offset", "0")), Long.parseLong(properties.getProperty("rowsLoaded", "0")),
+        Boolean.parseBoolean(properties.getProperty("complete")));
+  }
+
+  /**
+   * Writes the checkpoint to a temporary file first and moves it into place, so a crash never
+   * leaves a partially written checkpoint.
+   */
+  public void write(Path path) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty("source", source);
+    properties.setProperty("locator", locator);
+    properties.setProperty("offset", Long.toString(offset));
+    properties.setProperty("rowsLoaded", Long.toString(rowsLoaded));
+    properties.setProperty("complete", Boolean.toString(complete));
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try(Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+      properties.store(writer, "Initial load checkpoint");
+    }
+    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+}
@@ -0,0 +1,179 @@
+package com.mishima.sync.initialload;
+
+import static com.mishima.sync.util.OdsSchemaUtils.mapObjectNameToOdsColumnName;
+import static com.mishima.sync.util.OdsSchemaUtils.mapObjectTypeToOdsTableName;
+
+import com.mishima.sync.auth.SalesforceClientRegistry;
+import com.mishima.sync.model.SalesforceObjectDescribe;
+import com.mishima.sync.model.TableMetadata;
+import com.mishima.sync.repository.OracleRepository;
+import com.mishima.sync.repository.OracleSchemaRegistry;
+import com.mishima.sync.service.SalesforceObjectSchemaService;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Seeds an ODS table with every existing record of an object before the change consumer starts,
+ * either from a CSV export on disk or from a Bulk API 2.0 query job. Progress is checkpointed to
+ * disk, so an interrupted load resumes where it stopped instead of starting over.
+ *
+ * <p>Runners are called one after the other, so ordering this one ahead of the consumer's holds
+ * the consumer back until the load has finished.
+ */
+@Component
+@Profile("initial-load")
+@Order(InitialLoadStartup.ORDER)
+@Slf4j
+public class InitialLoadStartup implements ApplicationRunner {
+
+  public static final int ORDER = 0;
+
+  @Value("${sync.initial-load.object}")
+  private String objectType;
+
+  // Load from this CSV export instead of running a bulk query
+  @Value("${sync.initial-load.csv-file:}")
+  private String csvFile;
+
+  // Records inserted per transaction and the number of transactions run in parallel
+  @Value("${sync.initial-load.chunk-size:10000}")
+  private int chunkSize;
+
+  @Value("${sync.initial-load.parallelism:4}")
+  private int parallelism;
+
+  @Value("${sync.initial-load.checkpoint-file:initial-load.checkpoint}")
+  private String checkpointFile;
+
+  @Value("${sync.initial-load.poll-interval-ms:5000}")
+  private long pollIntervalMillis;
+
+  @Value("${sync.initial-load.max-records-per-page:50000}")
+  private int maxRecordsPerPage;
+
+  @Value("${oauth.tokenuri}")
+  private String tokenUri;
+
+  @Value("${oauth.clientId}")
+  private String clientId;
+
+  @Value("${oauth.clientSecret}")
+  private String clientSecret;
+
+  @Value("${oauth.username}")
+  private String username;
+
+  @Value("${oauth.password}")
+  private String password;
+
+  @Value("${salesforce.query.uri}")
+  private String salesforceQueryUri;
+
+  @Autowired
+  private OracleRepository oracleRepository;
+
+  @Autowired
+  private OracleSchemaRegistry oracleSchemaRegistry;
+
+  @Autowired
+  private SalesforceClientRegistry salesforceClientRegistry;
+
+  @Override
+  public void run(ApplicationArguments args) throws Exception {
+    TableMetadata table = oracleSchemaRegistry.getTable(mapObjectTypeToOdsTableName(objectType));
+    if(table == null) {
+      throw new IllegalStateException("No ODS table for " + objectType);
+    }
+    Path checkpointPath = Paths.get(checkpointFile);
+    InitialLoadCheckpoint checkpoint = InitialLoadCheckpoint.read(checkpointPath);
+    if(checkpoint != null && checkpoint.isComplete()) {
+      log.info("Initial load of {} already complete with {} rows, nothing to do", objectType, checkpoint.getRowsLoaded());
+      return;
+    }
+    if(checkpoint != null) {
+      log.info("Resuming initial load of {} from {}", objectType, checkpoint);
+    }
+    if(!csvFile.isEmpty()) {
+      loadFromCsv(table, checkpointPath, checkpoint);
+    } else {
+      loadFromBulkQuery(table, checkpointPath, checkpoint);
+    }
+  }
+
+  private void loadFromCsv(TableMetadata table, Path checkpointPath, InitialLoadCheckpoint checkpoint) throws Exception {
+    if(checkpoint != null && !csvFile.equals(checkpoint.getSource())) {
+      throw new IllegalStateException("Checkpoint " + checkpointPath + " belongs to " + checkpoint.getSource() + ", not " + csvFile);
+    }
+    InitialLoader loader = new InitialLoader(oracleRepository, table, objectType, chunkSize, parallelism, checkpointPath,
+        csvFile, checkpoint == null? 0: checkpoint.getRowsLoaded());
+    try(Reader reader = Files.newBufferedReader(Paths.get(csvFile), StandardCharsets.UTF_8)) {
+      loader.loadPage("", reader, checkpoint == null? 0: checkpoint.getOffset());
+      loader.finish();
+    } catch(Exception ex) {
+      loader.abort();
+      throw ex;
+    }
+  }
+
+  private void loadFromBulkQuery(TableMetadata table, Path checkpointPath, InitialLoadCheckpoint checkpoint) throws Exception {
+    OAuth2RestTemplate template = salesforceClientRegistry.getTemplate(tokenUri, clientId, clientSecret, username, password);
+    BulkQueryClient client = new BulkQueryClient(template, salesforceQueryUri, pollIntervalMillis);
+    String jobId;
+    if(checkpoint != null) {
+      jobId = checkpoint.getSource();
+    } else {
+      jobId = client.createQueryJob(buildQuery(template, table)).getId();
+      // Record the job before any results arrive so a restart does not run the query again
+      new InitialLoadCheckpoint(jobId, "", 0, 0, false).write(checkpointPath);
+    }
+    client.awaitCompletion(jobId);
+    InitialLoader loader = new InitialLoader(oracleRepository, table, objectType, chunkSize, parallelism, checkpointPath,
+        jobId, checkpoint == null? 0: checkpoint.getRowsLoaded());
+    try {
+      String locator = checkpoint == null || checkpoint.getLocator().isEmpty()? null: checkpoint.getLocator();
+      long skip = checkpoint == null? 0: checkpoint.getOffset();
+      do {
+        String page = locator == null? "": locator;
+        long pageSkip = skip;
+        locator = client.readResults(jobId, locator, maxRecordsPerPage, csv -> {
+          try {
+            loader.loadPage(page, csv, pageSkip);
+          } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted loading " + objectType, ex);
+          }
+        });
+        skip = 0;
+      } while(locator != null);
+      loader.finish();
+    } catch(Exception ex) {
+      loader.abort();
+      throw ex;
+    }
+  }
+
+  private String buildQuery(OAuth2RestTemplate template, TableMetadata table) {
+    SalesforceObjectDescribe describe = new SalesforceObjectSchemaService(template, salesforceQueryUri)
+        .extractSchemaForObject(objectType);
+    // Only query fields the table has a column for
+    String fields = describe.getFields().stream()
+        .filter(field -> table.indexOf(mapObjectNameToOdsColumnName(field.getName()).toLowerCase()) >= 0)
+        .map(field -> field.getName())
+        .collect(Collectors.joining(", "));
+    return "SELECT " + fields + " FROM " + objectType;
+  }
+
+}
@@ -0,0 +1,218 @@
+package com.mishima.sync.initialload;
+
+import static com.mishima.sync.util.OdsSchemaUtils.mapObjectNameToOdsColumnName;
+
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.ColumnType;
+import com.mishima.sync.model.OdsRow;
+import com.mishima.sync.model.TableMetadata;
+import com.mishima.sync.repository.OracleRepository;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads CSV records into an ODS table. Records are parsed as they stream in, mapped to the table's
+ * columns and grouped into chunks, and chunks are inserted in parallel as JDBC batches, each chunk
+ * in its own transaction. Records that already exist, for example after resuming, are skipped. A
+ * record rejected by any other constraint fails its chunk and stops the load, so no record is
+ * dropped without a trace.
+ *
+ * <p>Chunks can commit out of order, so the checkpoint only advances past a chunk once every chunk
+ * before it has committed too. Resuming from the checkpoint therefore never misses a record.
+ */
+@Slf4j
+public class InitialLoader {
+
+  private static final String ID_COLUMN = "id";
+
+  private final OracleRepository oracleRepository;
+  private final TableMetadata table;
+  private final String objectType;
+  private final int chunkSize;
+  private final Path checkpointFile;
+  private final String source;
+  private final ExecutorService executor;
+  private final Semaphore chunksInFlight;
+
+  private final AtomicLong rowsLoaded = new AtomicLong();
+  private final AtomicLong rowsSkipped = new AtomicLong();
+  private final TreeMap<Long, Position> committedChunks = new TreeMap<>();
+  // Rows loaded by each committed chunk, counted into the checkpoint once it moves past the chunk
+  private final TreeMap<Long, Long> committedRows = new TreeMap<>();
+  private long nextChunk;
+  private long nextCheckpointChunk;
+  private long checkpointedRows;
+  private volatile Exception failure;
+  private final long startedAt = System.currentTimeMillis();
+
+  public InitialLoader(OracleRepository oracleRepository, TableMetadata table, String objectType, int chunkSize,
+      int parallelism, Path checkpointFile, String source, long rowsAlreadyLoaded) {
+    this.oracleRepository = oracleRepository;
+    this.table = table;
+    this.objectType = objectType;
+    this.chunkSize = chunkSize;
+    this.checkpointFile = checkpointFile;
+    this.source = source;
+    this.executor = Executors.newFixedThreadPool(parallelism);
+    // Bound the parsed chunks held in memory while the writers catch up
+    this.chunksInFlight = new Semaphore(parallelism * 2);
+    this.rowsLoaded.set(rowsAlreadyLoaded);
+    this.checkpointedRows = rowsAlreadyLoaded;
+  }
+
+  /**
+   * Parses one page of CSV and queues its records for loading, skipping the given number of
+   * records already loaded from it. Returns the number of records in the page.
+   */
+  public long loadPage(String locator, Reader reader, long skipRecords) throws IOException, InterruptedException {
+    CsvReader csv = new CsvReader(reader);
+    String[] header = csv.readRecord();
+    if(header == null) {
+      return 0;
+    }
+    int[] columns = new int[header.length];
+    int idField = -1;
+    for(int i = 0; i < header.length; i++) {
+      columns[i] = table.indexOf(mapObjectNameToOdsColumnName(header[i]).toLowerCase());
+      if(columns[i] < 0) {
+        log.warn("Field {} has no column in {}, skipping it", header[i], table.getName());
+      } else if(ID_COLUMN.equals(table.getColumn(columns[i]).getColumnName())) {
+        idField = i;
+      }
+    }
+    if(idField < 0) {
+      throw new IllegalStateException("No Id field in the export of " + objectType);
+    }
+    long offset = 0;
+    List<ChangeCaptureEvent> chunk = new ArrayList<>(chunkSize);
+    String[] record;
+    while((record = csv.readRecord()) != null) {
+      offset++;
+      if(offset <= skipRecords) {
+        continue;
+      }
+      chunk.add(toEvent(record, columns, idField));
+      if(chunk.size() == chunkSize) {
+        submit(chunk, new Position(locator, offset));
+        chunk = new ArrayList<>(chunkSize);
+      }
+    }
+    if(!chunk.isEmpty()) {
+      submit(chunk, new Position(locator, offset));
+    }
+    return offset;
+  }
+
+  /**
+   * Waits for every queued chunk to commit and marks the checkpoint complete.
+   */
+  public long finish() throws Exception {
+    executor.shutdown();
+    while(!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+      log.info("Waiting for the remaining chunks of {} to load", objectType);
+    }
+    checkFailure();
+    new InitialLoadCheckpoint(source, "", 0, rowsLoaded.get(), true).write(checkpointFile);
+    log.info("Initial load of {} complete: {} rows loaded, {} already present, in {}s", objectType, rowsLoaded.get(),
+        rowsSkipped.get(), TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startedAt));
+    return rowsLoaded.get();
+  }
+
+  /**
+   * Stops loading after a failure, leaving the checkpoint at the last position fully committed.
+   */
+  public void abort() {
+    executor.shutdownNow();
+  }
+
+  private ChangeCaptureEvent toEvent(String[] record, int[] columns, int idField) {
+    Object[] values = new Object[table.size()];
+    for(int i = 0; i < columns.length && i < record.length; i++) {
+      if(columns[i] >= 0 && record[i] != null) {
+        values[columns[i]] = convert(table.getColumn(columns[i]).getColumnType(), record[i]);
+      }
+    }
+    return ChangeCaptureEvent.builder()
+        .userName("initial-load")
+        .action("C")
+        .objectType(objectType)
+        .objectId(record[idField])
+        .row(new OdsRow(table, values))
+        .build();
+  }
+
+  private Object convert(ColumnType columnType, String value) {
+    // Checkboxes are exported as true and false but stored as numbers
+    if(columnType == ColumnType.NUMBER && ("true".equals(value) || "false".equals(value))) {
+      return columnType.convert(Boolean.valueOf(value));
+    }
+    return columnType.convert(value);
+  }
+
+  private void submit(List<ChangeCaptureEvent> chunk, Position position) throws InterruptedException {
+    chunksInFlight.acquire();
+    try {
+      checkFailure();
+    } catch(Exception ex) {
+      chunksInFlight.release();
+      throw new IllegalStateException("Initial load of " + objectType + " failed", ex);
+    }
+    long sequence = nextChunk++;
+    executor.execute(() -> {
+      try {
+        int skipped = oracleRepository.bulkDoLoad(chunk).size();
+        rowsSkipped.addAndGet(skipped);
+        rowsLoaded.addAndGet(chunk.size() - skipped);
+        committed(sequence, position, chunk.size() - skipped);
+      } catch(Exception ex) {
+        log.error("Error loading chunk {} of {} -> {}", sequence, objectType, ex.getMessage());
+        failure = ex;
+      } finally {
+        chunksInFlight.release();
+      }
+    });
+  }
+
+  private synchronized void committed(long sequence, Position position, long rows) throws IOException {
+    committedChunks.put(sequence, position);
+    committedRows.put(sequence, rows);
+    Position checkpoint = null;
+    while(committedChunks.containsKey(nextCheckpointChunk)) {
+      checkpointedRows += committedRows.remove(nextCheckpointChunk);
+      checkpoint = committedChunks.remove(nextCheckpointChunk++);
+    }
+    if(checkpoint != null) {
+      // Only rows up to the checkpoint are counted, the chunks committed past it are replayed on resume
+      new InitialLoadCheckpoint(source, checkpoint.locator, checkpoint.offset, checkpointedRows, false).write(checkpointFile);
+      long loaded = rowsLoaded.get();
+      long elapsedSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - startedAt));
+      log.info("Loaded {} rows of {}, {} rows/s", loaded, objectType, loaded / elapsedSeconds);
+    }
+  }
+
+  private void checkFailure() throws Exception {
+    if(failure != null) {
+      throw failure;
+    }
+  }
+
+  @AllArgsConstructor
+  private static class Position {
+
+    private final String locator;
+    private final long offset;
+
+  }
+
+}
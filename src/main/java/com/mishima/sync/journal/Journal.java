@@ -0,0 +1,279 @@
+package com.mishima.sync.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal kept in a directory of memory-mapped segment files. Each record is written as
+ * its length, the CRC32 of its payload and the payload, and a record whose length is zero or whose
+ * checksum does not match marks the end of a segment. Records become readable once synced to disk.
+ *
+ * <p>A record is addressed by the position following it, the segment id in the high half and the
+ * offset within the segment in the low half. The checkpoint is the position up to which records
+ * have been applied; segments wholly before it are deleted as it moves, and reading resumes from it
+ * after a restart.
+ */
+@Slf4j
+public class Journal implements Closeable {
+
+  private static final String SEGMENT_SUFFIX = ".segment";
+  private static final String CHECKPOINT_FILE = "checkpoint";
+  private static final int HEADER_SIZE = 8;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final NavigableMap<Integer, Segment> segments = new TreeMap<>();
+
+  private Segment current;
+  // Records before this position are on disk and may be read
+  private long syncedPosition;
+  private long checkpoint;
+
+  public Journal(Path directory, int segmentSize) throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    Files.createDirectories(directory);
+    try(Stream<Path> files = Files.list(directory)) {
+      for(Path path: (Iterable<Path>)files.filter(path -> path.toString().endsWith(SEGMENT_SUFFIX))::iterator) {
+        Segment segment = new Segment(path, segmentId(path), (int)Files.size(path));
+        segment.recover();
+        segments.put(segment.id, segment);
+      }
+    }
+    if(segments.isEmpty()) {
+      current = createSegment(0);
+    } else {
+      current = segments.lastEntry().getValue();
+    }
+    syncedPosition = position(current.id, current.writeOffset);
+    Path checkpointPath = directory.resolve(CHECKPOINT_FILE);
+    checkpoint = Files.exists(checkpointPath)? Long.parseLong(Files.readString(checkpointPath).trim()):
+        position(segments.firstKey(), 0);
+    log.info("Opened journal {} with {} segments, checkpoint {} and end {}", directory, segments.size(),
+        describe(checkpoint), describe(syncedPosition));
+  }
+
+  /**
+   * Appends a record, returning its position. The record is not durable or readable until the next
+   * {@link #sync()}.
+   */
+  public synchronized long append(byte[] payload) throws IOException {
+    if(HEADER_SIZE + payload.length > segmentSize) {
+      throw new IOException("Record of " + payload.length + " bytes does not fit in a journal segment");
+    }
+    if(current.buffer.capacity() - current.writeOffset < HEADER_SIZE + payload.length) {
+      roll();
+    }
+    current.write(payload);
+    return position(current.id, current.writeOffset);
+  }
+
+  public synchronized void sync() {
+    current.buffer.force();
+    syncedPosition = position(current.id, current.writeOffset);
+    notifyAll();
+  }
+
+  /**
+   * Reads up to the given number of records following the position, waiting up to the timeout for
+   * one to be synced if there are none yet.
+   */
+  public synchronized List<JournalRecord> read(long from, int maxRecords, long timeoutMillis)
+      throws IOException, InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while(from >= syncedPosition && System.currentTimeMillis() < deadline) {
+      wait(Math.max(1, deadline - System.currentTimeMillis()));
+    }
+    List<JournalRecord> records = new ArrayList<>();
+    long position = from;
+    while(records.size() < maxRecords && position < syncedPosition) {
+      Segment segment = segments.get(segmentOf(position));
+      if(segment == null) {
+        throw new IOException("Journal segment " + segmentOf(position) + " is missing");
+      }
+      byte[] payload = segment.read(offsetOf(position));
+      if(payload == null && offsetOf(position) < segment.writeOffset) {
+        throw new IOException("Corrupt journal record at " + describe(position) + " in " + segment.path);
+      } else if(payload == null) {
+        // End of a rolled segment, continue with the next one
+        position = position(segments.higherKey(segment.id), 0);
+        continue;
+      }
+      position = position(segment.id, offsetOf(position) + HEADER_SIZE + payload.length);
+      records.add(new JournalRecord(position, payload));
+    }
+    return records;
+  }
+
+  public synchronized long getCheckpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * Records that every record up to the position has been applied and deletes the segments before it.
+   */
+  public synchronized void checkpoint(long position) throws IOException {
+    if(position == checkpoint) {
+      return;
+    }
+    Path checkpointPath = directory.resolve(CHECKPOINT_FILE);
+    Path tempPath = directory.resolve(CHECKPOINT_FILE + ".tmp");
+    Files.writeString(tempPath, Long.toString(position));
+    Files.move(tempPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    checkpoint = position;
+    while(segments.firstKey() < segmentOf(position)) {
+      Segment segment = segments.pollFirstEntry().getValue();
+      segment.close();
+      Files.delete(segment.path);
+      log.debug("Deleted applied journal segment {}", segment.path);
+    }
+  }
+
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * Returns the number of synced bytes not yet applied.
+   */
+  public synchronized long getBacklogBytes() {
+    long bytes = 0;
+    for(Map.Entry<Integer, Segment> entry: segments.tailMap(segmentOf(checkpoint), true).entrySet()) {
+      int start = entry.getKey() == segmentOf(checkpoint)? offsetOf(checkpoint): 0;
+      int end = entry.getKey() == segmentOf(syncedPosition)? offsetOf(syncedPosition): entry.getValue().writeOffset;
+      bytes += Math.max(0, end - start);
+    }
+    return bytes;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    sync();
+    for(Segment segment: segments.values()) {
+      segment.close();
+    }
+  }
+
+  private void roll() throws IOException {
+    current.buffer.force();
+    current = createSegment(current.id + 1);
+    syncedPosition = position(current.id, 0);
+    notifyAll();
+    log.debug("Rolled journal to segment {}", current.path);
+  }
+
+  private Segment createSegment(int id) throws IOException {
+    Segment segment = new Segment(directory.resolve(String.format("%010d%s", id, SEGMENT_SUFFIX)), id, segmentSize);
+    segments.put(id, segment);
+    return segment;
+  }
+
+  private static int segmentId(Path path) {
+    String name = path.getFileName().toString();
+    return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  static long position(int segmentId, int offset) {
+    return ((long)segmentId << 32) | offset;
+  }
+
+  static int segmentOf(long position) {
+    return (int)(position >>> 32);
+  }
+
+  static int offsetOf(long position) {
+    return (int)position;
+  }
+
+  private static String describe(long position) {
+    return segmentOf(position) + ":" + offsetOf(position);
+  }
+
+  private static class Segment {
+
+    private final Path path;
+    private final int id;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int writeOffset;
+
+    private Segment(Path path, int id, int size) throws IOException {
+      this.path = path;
+      this.id = id;
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      // Mapping a new file extends it to the full size, which is filled with zeros
+      this.buffer = channel.map(MapMode.READ_WRITE, 0, size);
+    }
+
+    private void write(byte[] payload) {
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      // The length goes in last so a record torn by a crash reads as the end of the segment
+      buffer.putInt(writeOffset + 4, (int)crc.getValue());
+      ByteBuffer view = buffer.duplicate();
+      view.position(writeOffset + HEADER_SIZE);
+      view.put(payload);
+      buffer.putInt(writeOffset, payload.length);
+      writeOffset += HEADER_SIZE + payload.length;
+    }
+
+    // Returns the payload of the record at the offset, or null at the end of the segment's records
+    private byte[] read(int offset) {
+      if(offset + HEADER_SIZE > buffer.capacity()) {
+        return null;
+      }
+      int length = buffer.getInt(offset);
+      if(length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+        return null;
+      }
+      byte[] payload = new byte[length];
+      ByteBuffer view = buffer.duplicate();
+      view.position(offset + HEADER_SIZE);
+      view.get(payload);
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      return (int)crc.getValue() == buffer.getInt(offset + 4)? payload: null;
+    }
+
+    // Finds the end of the records written before a restart and clears a record torn by a crash
+    private void recover() {
+      int offset = 0;
+      byte[] payload;
+      while((payload = read(offset)) != null) {
+        offset += HEADER_SIZE + payload.length;
+      }
+      writeOffset = offset;
+      if(offset + HEADER_SIZE <= buffer.capacity() && buffer.getInt(offset) != 0) {
+        log.warn("Discarding torn record at offset {} of journal segment {}", offset, path);
+        // Segments are written once front to back, so nothing past the torn record was ever written
+        long end = Math.min(buffer.capacity(), (long)offset + HEADER_SIZE + Math.max(0, buffer.getInt(offset)));
+        for(int i = offset; i < end; i++) {
+          buffer.put(i, (byte)0);
+        }
+        buffer.force();
+      }
+    }
+
+    private void close() throws IOException {
+      channel.close();
+    }
+
+  }
+
+}
@@ -0,0 +1,199 @@
+package com.mishima.sync.journal;
+
+import com.mishima.sync.processor.RetryScheduler;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drains a journal from its checkpoint in the order records were appended, at whatever pace the
+ * apply function allows. Records are handed over in batches with a bounded number in flight, and
+ * any that fail are retried with backoff until the retry scheduler's attempts are used up, when
+ * they are handed to the dead letter function instead. The checkpoint only moves past a record once
+ * it and every record before it have been applied or dead lettered, so after a restart nothing is
+ * lost and at most the records applied since the last checkpoint are applied again.
+ */
+@Slf4j
+public class JournalApplier {
+
+  /**
+   * Takes a record that could not be applied within the allowed attempts.
+   */
+  @FunctionalInterface
+  public interface DeadLetterFunction {
+
+    void deadLetter(byte[] payload, int attempts, Throwable cause) throws IOException;
+
+  }
+
+  private final Journal journal;
+  private final Function<List<byte[]>, List<CompletableFuture<Void>>> applyFunction;
+  private final DeadLetterFunction deadLetterFunction;
+  private final int batchSize;
+  private final Semaphore inFlight;
+  private final RetryScheduler retryScheduler;
+  private final long checkpointIntervalMillis;
+
+  // Whether each record handed to the apply function has been applied, by the position following it
+  private final TreeMap<Long, Boolean> outstanding = new TreeMap<>();
+  private long appliedPosition;
+
+  private final LongAdder applied = new LongAdder();
+  private final LongAdder retried = new LongAdder();
+  private final LongAdder deadLettered = new LongAdder();
+
+  private volatile boolean running;
+  private Thread thread;
+
+  public JournalApplier(Journal journal, Function<List<byte[]>, List<CompletableFuture<Void>>> applyFunction,
+      DeadLetterFunction deadLetterFunction, int batchSize, int maxInFlight, RetryScheduler retryScheduler,
+      long checkpointIntervalMillis) {
+    this.journal = journal;
+    this.applyFunction = applyFunction;
+    this.deadLetterFunction = deadLetterFunction;
+    this.batchSize = batchSize;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.retryScheduler = retryScheduler;
+    this.checkpointIntervalMillis = checkpointIntervalMillis;
+  }
+
+  public void start() {
+    running = true;
+    appliedPosition = journal.getCheckpoint();
+    thread = new Thread(this::run, "journal-applier");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops handing out records and writes the checkpoint. Records still being applied are replayed
+   * after a restart.
+   */
+  public void stop() throws InterruptedException, IOException {
+    running = false;
+    if(thread != null) {
+      thread.interrupt();
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    checkpoint();
+  }
+
+  public long getApplied() {
+    return applied.sum();
+  }
+
+  public long getRetried() {
+    return retried.sum();
+  }
+
+  public long getDeadLettered() {
+    return deadLettered.sum();
+  }
+
+  public int getInFlight() {
+    synchronized(outstanding) {
+      return outstanding.size();
+    }
+  }
+
+  private void run() {
+    long position = journal.getCheckpoint();
+    long lastCheckpoint = System.currentTimeMillis();
+    while(running) {
+      try {
+        inFlight.acquire();
+        int held = 1 + inFlight.drainPermits();
+        List<JournalRecord> records = journal.read(position, Math.min(batchSize, held), 1000);
+        // Keep one permit per record handed out, each is released once its record is applied
+        inFlight.release(held - records.size());
+        if(!records.isEmpty()) {
+          synchronized(outstanding) {
+            records.forEach(record -> outstanding.put(record.getPosition(), false));
+          }
+          List<CompletableFuture<Void>> futures = applyFunction.apply(
+              records.stream().map(JournalRecord::getPayload).collect(Collectors.toList()));
+          for(int i = 0; i < records.size(); i++) {
+            track(records.get(i), futures.get(i), 1);
+          }
+          position = records.get(records.size() - 1).getPosition();
+        }
+        if(System.currentTimeMillis() - lastCheckpoint >= checkpointIntervalMillis) {
+          checkpoint();
+          lastCheckpoint = System.currentTimeMillis();
+        }
+      } catch(InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch(IOException ex) {
+        // A corrupt or missing segment cannot be skipped without losing events, so stop here
+        log.error("Could not read the journal at position {}, stopping the applier", position, ex);
+        running = false;
+      } catch(RuntimeException ex) {
+        log.error("Error applying journal records", ex);
+      }
+    }
+  }
+
+  private void track(JournalRecord record, CompletableFuture<Void> future, int attempt) {
+    future.whenComplete((result, ex) -> {
+      if(ex == null) {
+        advance(record);
+        applied.increment();
+      } else if(running && !retryScheduler.canRetry(attempt)) {
+        deadLetter(record, attempt, ex);
+      } else if(running) {
+        long delayMillis = retryScheduler.delayFor(attempt);
+        log.warn("Could not apply journal record at {}, retrying in {}ms, retry attempt {} -> {}", record.getPosition(),
+            delayMillis, attempt, ex.getMessage());
+        retried.increment();
+        track(record, retryScheduler.schedule(delayMillis, () -> applyFunction.apply(List.of(record.getPayload())).get(0)),
+            attempt + 1);
+      }
+    });
+  }
+
+  private void deadLetter(JournalRecord record, int attempt, Throwable cause) {
+    log.error("Could not apply journal record at {} after {} attempts, writing it to the dead letter sink -> {}",
+        record.getPosition(), attempt, cause.getMessage());
+    try {
+      deadLetterFunction.deadLetter(record.getPayload(), attempt, cause);
+    } catch(IOException ex) {
+      // Holding the checkpoint is the only way not to lose the record, so keep retrying it
+      log.error("Could not dead letter journal record at {}, retrying it", record.getPosition(), ex);
+      retried.increment();
+      track(record, retryScheduler.schedule(retryScheduler.delayFor(attempt),
+          () -> applyFunction.apply(List.of(record.getPayload())).get(0)), attempt + 1);
+      return;
+    }
+    advance(record);
+    deadLettered.increment();
+  }
+
+  private void advance(JournalRecord record) {
+    synchronized(outstanding) {
+      outstanding.put(record.getPosition(), true);
+      while(!outstanding.isEmpty() && outstanding.firstEntry().getValue()) {
+        Map.Entry<Long, Boolean> entry = outstanding.pollFirstEntry();
+        appliedPosition = entry.getKey();
+      }
+    }
+    inFlight.release();
+  }
+
+  private void checkpoint() throws IOException {
+    long position;
+    synchronized(outstanding) {
+      position = appliedPosition;
+    }
+    journal.checkpoint(position);
+  }
+
+}
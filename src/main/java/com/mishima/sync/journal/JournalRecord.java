@@ -0,0 +1,16 @@
+package com.mishima.sync.journal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Record read from a {@link Journal}, along with the position following it.
+ */
+@Getter
+@AllArgsConstructor
+public class JournalRecord {
+
+  private final long position;
+  private final byte[] payload;
+
+}
@@ -0,0 +1,56 @@
+package com.mishima.sync.journal;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Journal record layout of an SQS message, keeping its id, body and string attributes. The receipt
+ * handle is dropped as the message is deleted from the queue once journaled.
+ */
+public class JournaledMessage {
+
+  private JournaledMessage() {
+  }
+
+  public static byte[] encode(Message message) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(message.getBody().length() + 128);
+    try(DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeUTF(message.getMessageId());
+      Map<String, MessageAttributeValue> attributes = message.getMessageAttributes();
+      out.writeInt((int)attributes.values().stream().filter(value -> value.getStringValue() != null).count());
+      for(Map.Entry<String, MessageAttributeValue> attribute: attributes.entrySet()) {
+        if(attribute.getValue().getStringValue() != null) {
+          out.writeUTF(attribute.getKey());
+          out.writeUTF(attribute.getValue().getStringValue());
+        }
+      }
+      // Bodies can be larger than writeUTF allows
+      byte[] body = message.getBody().getBytes(StandardCharsets.UTF_8);
+      out.writeInt(body.length);
+      out.write(body);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static Message decode(byte[] payload) throws IOException {
+    try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      Message message = new Message().withMessageId(in.readUTF());
+      int attributeCount = in.readInt();
+      for(int i = 0; i < attributeCount; i++) {
+        message.addMessageAttributesEntry(in.readUTF(), new MessageAttributeValue().withDataType("String")
+            .withStringValue(in.readUTF()));
+      }
+      byte[] body = new byte[in.readInt()];
+      in.readFully(body);
+      return message.withBody(new String(body, StandardCharsets.UTF_8));
+    }
+  }
+
+}
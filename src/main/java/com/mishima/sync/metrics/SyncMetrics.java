@@ -0,0 +1,176 @@
+package com.mishima.sync.metrics;
+
+import com.mishima.sync.model.ChangeCaptureEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import javax.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters for each stage between receiving a message and committing its changes to Oracle. Timers
+ * and summaries publish percentiles and a percentile histogram so latency can be compared across
+ * stages and alerted on, in particular the replication lag from a change in Salesforce to its commit.
+ */
+@Component
+public class SyncMetrics {
+
+  private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private Timer receiveTimer;
+  private DistributionSummary receiveBatchSize;
+  private Timer parseTimer;
+  private DistributionSummary messageSize;
+  private Timer statementBuildTimer;
+  private Timer replicationLag;
+  private Counter retries;
+  private Counter deadLetters;
+  private Counter deletes;
+
+  // Per table and action or statement meters, cached to avoid a registry lookup on every statement
+  private final Map<String, Timer> executeTimers = new ConcurrentHashMap<>();
+  private final Map<String, Timer> batchExecuteTimers = new ConcurrentHashMap<>();
+  private final Map<String, Counter> constraintFallbacks = new ConcurrentHashMap<>();
+
+  @PostConstruct
+  private void init() {
+    receiveTimer = timer("sync.sqs.receive", "Time spent in a long-poll receive");
+    receiveBatchSize = summary("sync.sqs.receive.messages", "Messages returned by a receive", "messages");
+    parseTimer = timer("sync.message.parse", "Time to decode a message body into events");
+    messageSize = summary("sync.message.size", "Size of decoded message bodies", "bytes");
+    statementBuildTimer = timer("sync.oracle.statement.build", "Time to generate a statement not already cached");
+    replicationLag = timer("sync.replication.lag", "Time from a change being made in Salesforce to its commit in Oracle");
+    retries = Counter.builder("sync.retries").description("Updates scheduled for another attempt").register(meterRegistry);
+    deadLetters = Counter.builder("sync.dead.letters").description("Events given up on and written to the dead letter sink")
+        .register(meterRegistry);
+    deletes = Counter.builder("sync.sqs.deletes").description("Messages acknowledged for deletion").register(meterRegistry);
+  }
+
+  public void recordReceive(long nanos, int messages) {
+    receiveTimer.record(nanos, TimeUnit.NANOSECONDS);
+    receiveBatchSize.record(messages);
+  }
+
+  public void recordParse(long nanos, String body) {
+    parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+    messageSize.record(utf8Length(body));
+  }
+
+  public void recordStatementBuild(long nanos) {
+    statementBuildTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordExecute(String table, String action, long nanos) {
+    executeTimers.computeIfAbsent(table + ":" + action, key -> Timer.builder("sync.oracle.execute")
+        .description("Time to execute a single statement")
+        .tag("table", table)
+        .tag("action", action)
+        .publishPercentiles(PERCENTILES)
+        .publishPercentileHistogram()
+        .register(meterRegistry)).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordBatchExecute(String table, String statement, long nanos) {
+    batchExecuteTimers.computeIfAbsent(table + ":" + statement, key -> Timer.builder("sync.oracle.execute.batch")
+        .description("Time to execute the JDBC batches for one table, statement and column shape")
+        .tag("table", table)
+        .tag("statement", statement)
+        .publishPercentiles(PERCENTILES)
+        .publishPercentileHistogram()
+        .register(meterRegistry)).record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Counts rows that hit a constraint violation and were applied another way, for example a create
+   * for a record that already exists being applied as an update.
+   */
+  public void recordConstraintFallbacks(String stage, int count) {
+    constraintFallbacks.computeIfAbsent(stage, key -> Counter.builder("sync.oracle.constraint.fallbacks")
+        .description("Rows rejected by a constraint and applied another way")
+        .tag("stage", stage)
+        .register(meterRegistry)).increment(count);
+  }
+
+  public void recordRetry() {
+    retries.increment();
+  }
+
+  public void recordDeadLetter() {
+    deadLetters.increment();
+  }
+
+  public void recordDelete() {
+    deletes.increment();
+  }
+
+  /**
+   * Records the lag of a committed event, measured from the time the change was made in Salesforce.
+   */
+  public void recordCommitted(ChangeCaptureEvent e) {
+    if(e.getCreatedTime() != null) {
+      replicationLag.record(Math.max(0, System.currentTimeMillis() - e.getCreatedTime().getTime()), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Publishes a value read from the source whenever the registry is scraped, such as a setting that
+   * is adjusted at runtime.
+   */
+  public <T> void registerGauge(String name, String description, T source, ToDoubleFunction<T> value) {
+    Gauge.builder(name, source, value).description(description).register(meterRegistry);
+  }
+
+  /**
+   * Publishes a running total kept by the source, such as a count of events a component has handled.
+   */
+  public <T> void registerFunctionCounter(String name, String description, T source, ToDoubleFunction<T> count) {
+    FunctionCounter.builder(name, source, count).description(description).register(meterRegistry);
+  }
+
+  private Timer timer(String name, String description) {
+    return Timer.builder(name)
+        .description(description)
+        .publishPercentiles(PERCENTILES)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+
+  private DistributionSummary summary(String name, String description, String baseUnit) {
+    return DistributionSummary.builder(name)
+        .description(description)
+        .baseUnit(baseUnit)
+        .publishPercentiles(PERCENTILES)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+  }
+
+  private static int utf8Length(String s) {
+    int length = 0;
+    for(int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if(c < 0x80) {
+        length++;
+      } else if(c < 0x800) {
+        length += 2;
+      } else if(Character.isHighSurrogate(c)) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+}
@@ -0,0 +1,19 @@
+package com.mishima.sync.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+public class BulkQueryJob {
+
+  private String id;
+  private String operation;
+  private String object;
+  private String state;
+  private String errorMessage;
+  private long numberRecordsProcessed;
+
+}
@@ -41,4 +41,11 @@ public class ChangeCaptureEvent {
   @SerializedName("fullPayload")
   private Map<String,Object> fullPayload;
 
+  // Full payload already mapped to the ODS table's columns, populated when the event is decoded
+  @ToString.Exclude
+  private transient OdsRow row;
+
+  // Why values of the payload could not be converted to their column types, if any could not
+  private transient String conversionError;
+
 }
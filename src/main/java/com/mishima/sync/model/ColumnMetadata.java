@@ -0,0 +1,28 @@
+package com.mishima.sync.model;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+@Getter
+@Builder
+@EqualsAndHashCode
+public class ColumnMetadata implements Comparable<ColumnMetadata> {
+
+  private final String columnName;
+  private final String dataType;
+  private final ColumnType columnType;
+
+  public int compareTo(ColumnMetadata o) {
+    if (dataType.equals("clob") && o.dataType.equals("clob")) {
+      return columnName.compareTo(o.columnName);
+    } else if (dataType.equals("clob")) {
+      return 1; // Always last;
+    } else if (o.dataType.equals("clob")) {
+      return -1; // Always last;
+    } else {
+      return columnName.compareTo(o.columnName);
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+package com.mishima.sync.model;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * Java representation of an ODS column, derived once from its Oracle data type. Payload values are
+ * converted to the column's type before binding so the database receives native values rather than
+ * strings it has to parse.
+ */
+public enum ColumnType {
+
+  TEXT,
+  CLOB,
+  NUMBER,
+  TIMESTAMP,
+  DATE;
+
+  public static ColumnType fromDataType(String dataType) {
+    if(dataType.startsWith("timestamp")) {
+      return TIMESTAMP;
+    } else if(dataType.equals("date")) {
+      return DATE;
+    } else if(dataType.equals("number") || dataType.equals("float") || dataType.startsWith("binary_")) {
+      return NUMBER;
+    } else if(dataType.endsWith("clob")) {
+      return CLOB;
+    } else {
+      return TEXT;
+    }
+  }
+
+  public Object convert(Object value) {
+    if(value == null) {
+      return null;
+    }
+    if(this != TEXT && this != CLOB && value instanceof String && ((String)value).isBlank()) {
+      // Oracle stores an empty string as NULL, so a blank number or date means no value rather than a bad one
+      return null;
+    }
+    switch(this) {
+      case NUMBER:
+        if(value instanceof BigDecimal) {
+          return value;
+        } else if(value instanceof Boolean) {
+          return (Boolean)value? BigDecimal.ONE: BigDecimal.ZERO;
+        } else if(value instanceof Double || value instanceof Float) {
+          return BigDecimal.valueOf(((Number)value).doubleValue());
+        } else if(value instanceof Number) {
+          return BigDecimal.valueOf(((Number)value).longValue());
+        }
+        return new BigDecimal(value.toString());
+      case TIMESTAMP:
+        if(value instanceof Timestamp) {
+          return value;
+        }
+        Instant instant = value instanceof Date? ((Date)value).toInstant(): Instant.parse(value.toString());
+        // Timestamps are stored as UTC wall-clock time regardless of the JVM time zone
+        return Timestamp.valueOf(LocalDateTime.ofInstant(instant, ZoneOffset.UTC));
+      case DATE:
+        if(value instanceof java.sql.Date) {
+          return value;
+        }
+        String date = value.toString();
+        return java.sql.Date.valueOf(LocalDate.parse(date.length() > 10? date.substring(0, 10): date));
+      default:
+        return value instanceof Boolean? (Boolean)value? 1: 0: value;
+    }
+  }
+
+}
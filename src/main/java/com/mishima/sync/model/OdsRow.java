@@ -0,0 +1,21 @@
+package com.mishima.sync.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Column values of a record laid out by position in the table's column list, ready to be bound to
+ * a statement. A null value means the column is not set.
+ */
+@Getter
+@AllArgsConstructor
+public class OdsRow {
+
+  private final TableMetadata table;
+  private final Object[] values;
+
+  public OdsRow(TableMetadata table) {
+    this(table, new Object[table.size()]);
+  }
+
+}
@@ -0,0 +1,24 @@
+package com.mishima.sync.model;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+@Builder
+@Getter
+@Setter
+public class OracleSchemaBatchRequest {
+
+  // Objects to generate tables for, ignored when allCustomObjects is set
+  private List<String> objectNames;
+  private boolean allCustomObjects;
+  private String salesforceBaseUri;
+
+  private String tokenUri;
+  private String clientId;
+  private String clientSecret;
+  private String username;
+  private String password;
+
+}
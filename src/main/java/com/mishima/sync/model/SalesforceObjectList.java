@@ -0,0 +1,25 @@
+package com.mishima.sync.model;
+
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+public class SalesforceObjectList {
+
+  private List<SalesforceObjectSummary> sobjects;
+
+  @Getter
+  @Setter
+  @ToString
+  public static class SalesforceObjectSummary {
+
+    private String name;
+    private boolean custom;
+
+  }
+
+}
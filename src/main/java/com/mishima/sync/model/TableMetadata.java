@@ -0,0 +1,44 @@
+package com.mishima.sync.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import lombok.Getter;
+
+/**
+ * Ordered column layout of an ODS table. Column positions are stable for the lifetime of the
+ * instance and are used to index bound values and statement plans.
+ */
+@Getter
+public class TableMetadata {
+
+  private final String name;
+  private final List<ColumnMetadata> columns;
+  private final Map<String,Integer> columnIndex;
+
+  public TableMetadata(String name, SortedSet<ColumnMetadata> columns) {
+    this.name = name;
+    this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+    Map<String,Integer> index = new HashMap<>();
+    for(int i = 0; i < this.columns.size(); i++) {
+      index.put(this.columns.get(i).getColumnName(), i);
+    }
+    this.columnIndex = Collections.unmodifiableMap(index);
+  }
+
+  public int indexOf(String columnName) {
+    return columnIndex.getOrDefault(columnName, -1);
+  }
+
+  public ColumnMetadata getColumn(int index) {
+    return columns.get(index);
+  }
+
+  public int size() {
+    return columns.size();
+  }
+
+}
@@ -0,0 +1,229 @@
+package com.mishima.sync.processor;
+
+import com.mishima.sync.metrics.SyncMetrics;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.annotation.PostConstruct;
+import javax.persistence.QueryTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionTimedOutException;
+
+/**
+ * Adjusts the number of concurrent Oracle writes and the rows per JDBC batch to the latency Oracle
+ * is giving, using additive increase and multiplicative decrease. Each completed write reports its
+ * latency, rows and outcome. Latency is smoothed separately for single-row writes and for batches
+ * or groups of rows, so a mix of the two does not swing the average. Both settings grow by a step
+ * once a full window of writes has completed under the target latency. They are cut by the backoff
+ * ratio when either smoothed latency goes over the target, or when a write fails from overload: a
+ * timeout, a deadlock (ORA-00060) or no pooled connection being available. Cuts are at most one per
+ * cooldown, as the writes already in flight still report the latency that caused the first.
+ *
+ * <p>When disabled the limits stay at their maximums.
+ */
+@Component
+@Slf4j
+public class AdaptiveLimiter {
+
+  // Oracle error codes for a deadlock and a statement cancelled by its timeout
+  private static final int ORA_DEADLOCK = 60;
+  private static final int ORA_CANCELLED = 1013;
+
+  // Weight of each new latency sample in the smoothed latency
+  private static final double SMOOTHING = 0.2;
+
+  private final boolean enabled;
+  private final int minConcurrency;
+  private final int maxConcurrency;
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final int batchSizeStep;
+  private final long targetLatencyNanos;
+  private final double backoffRatio;
+  private final long cooldownNanos;
+  private final LongSupplier clock;
+
+  @Autowired(required = false)
+  private SyncMetrics syncMetrics;
+
+  private int concurrencyLimit;
+  private int batchSize;
+  private int inFlight;
+  private double smoothedSingleLatencyNanos;
+  private double smoothedBulkLatencyNanos;
+  private int successesSinceChange;
+  private long lastDecrease;
+  private long decreases;
+
+  @Autowired
+  public AdaptiveLimiter(
+      @Value("${sync.adaptive.enabled:false}") boolean enabled,
+      @Value("${sync.adaptive.min-concurrency:1}") int minConcurrency,
+      @Value("${sync.adaptive.max-concurrency:${sync.consumer.partitions:4}}") int maxConcurrency,
+      @Value("${sync.adaptive.min-batch-size:50}") int minBatchSize,
+      @Value("${sync.adaptive.max-batch-size:${sync.oracle.batch-size:500}}") int maxBatchSize,
+      @Value("${sync.adaptive.batch-size-step:50}") int batchSizeStep,
+      @Value("${sync.adaptive.target-latency-ms:200}") long targetLatencyMillis,
+      @Value("${sync.adaptive.backoff-ratio:0.5}") double backoffRatio,
+      @Value("${sync.adaptive.cooldown-ms:1000}") long cooldownMillis) {
+    this(enabled, minConcurrency, maxConcurrency, minBatchSize, maxBatchSize, batchSizeStep, targetLatencyMillis,
+        backoffRatio, cooldownMillis, System::nanoTime);
+  }
+
+  public AdaptiveLimiter(boolean enabled, int minConcurrency, int maxConcurrency, int minBatchSize, int maxBatchSize,
+      int batchSizeStep, long targetLatencyMillis, double backoffRatio, long cooldownMillis, LongSupplier clock) {
+    this.enabled = enabled;
+    // The maximums are the configured sizes, so a minimum above one is lowered to it rather than raising it
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.minConcurrency = Math.min(Math.max(1, minConcurrency), this.maxConcurrency);
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.minBatchSize = Math.min(Math.max(1, minBatchSize), this.maxBatchSize);
+    this.batchSizeStep = batchSizeStep;
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    this.backoffRatio = backoffRatio;
+    this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(cooldownMillis);
+    this.clock = clock;
+    this.concurrencyLimit = this.maxConcurrency;
+    this.batchSize = this.maxBatchSize;
+    this.lastDecrease = clock.getAsLong() - cooldownNanos;
+  }
+
+  @PostConstruct
+  private void init() {
+    if(enabled) {
+      log.info("Adapting Oracle write concurrency between {} and {} and batch size between {} and {} to a {}ms target",
+          minConcurrency, maxConcurrency, minBatchSize, maxBatchSize, TimeUnit.NANOSECONDS.toMillis(targetLatencyNanos));
+    }
+    if(syncMetrics != null) {
+      syncMetrics.registerGauge("sync.adaptive.concurrency", "Concurrent Oracle writes currently allowed", this,
+          AdaptiveLimiter::getConcurrencyLimit);
+      syncMetrics.registerGauge("sync.adaptive.batch.size", "Rows per JDBC batch currently used", this,
+          AdaptiveLimiter::getBatchSize);
+      syncMetrics.registerGauge("sync.adaptive.in.flight", "Oracle writes in progress", this, AdaptiveLimiter::getInFlight);
+      syncMetrics.registerGauge("sync.adaptive.latency", "Smoothed latency of Oracle writes in milliseconds", this,
+          AdaptiveLimiter::getSmoothedLatencyMillis);
+    }
+  }
+
+  /**
+   * Waits until a write may start under the current concurrency limit.
+   */
+  public synchronized void acquire() throws InterruptedException {
+    while(inFlight >= concurrencyLimit) {
+      wait();
+    }
+    inFlight++;
+  }
+
+  /**
+   * Ends a write started with {@link #acquire()}, reporting how long it took, how many rows it
+   * wrote and the error it failed with, if any.
+   */
+  public synchronized void release(long latencyNanos, int rows, Throwable error) {
+    inFlight--;
+    if(enabled) {
+      adjust(latencyNanos, rows, error);
+    }
+    notifyAll();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public synchronized int getConcurrencyLimit() {
+    return concurrencyLimit;
+  }
+
+  public synchronized int getBatchSize() {
+    return batchSize;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * Returns the higher of the smoothed single-row and bulk write latencies.
+   */
+  public synchronized double getSmoothedLatencyMillis() {
+    return Math.max(smoothedSingleLatencyNanos, smoothedBulkLatencyNanos) / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  public synchronized long getDecreases() {
+    return decreases;
+  }
+
+  /**
+   * Returns the share of the maximum concurrency currently allowed, for scaling work taken on
+   * upstream of the writes.
+   */
+  public synchronized double getThrottle() {
+    return (double)concurrencyLimit / maxConcurrency;
+  }
+
+  private void adjust(long latencyNanos, int rows, Throwable error) {
+    if(error != null) {
+      if(isOverload(error)) {
+        decrease("write failed with " + error);
+      }
+      return;
+    }
+    double smoothedLatencyNanos;
+    if(rows > 1) {
+      smoothedLatencyNanos = smoothedBulkLatencyNanos = smooth(smoothedBulkLatencyNanos, latencyNanos);
+    } else {
+      smoothedLatencyNanos = smoothedSingleLatencyNanos = smooth(smoothedSingleLatencyNanos, latencyNanos);
+    }
+    if(smoothedLatencyNanos > targetLatencyNanos) {
+      decrease((rows > 1? "bulk": "single-row") + " latency " + TimeUnit.NANOSECONDS.toMillis((long)smoothedLatencyNanos) + "ms");
+    } else if(++successesSinceChange >= concurrencyLimit) {
+      // One step per window of writes, so the limit grows at the same pace whatever it is
+      successesSinceChange = 0;
+      concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1);
+      batchSize = Math.min(maxBatchSize, batchSize + batchSizeStep);
+    }
+  }
+
+  private static double smooth(double smoothedNanos, long latencyNanos) {
+    return smoothedNanos == 0? latencyNanos: smoothedNanos + SMOOTHING * (latencyNanos - smoothedNanos);
+  }
+
+  private void decrease(String reason) {
+    long now = clock.getAsLong();
+    successesSinceChange = 0;
+    if(now - lastDecrease < cooldownNanos) {
+      return;
+    }
+    lastDecrease = now;
+    decreases++;
+    concurrencyLimit = Math.max(minConcurrency, (int)(concurrencyLimit * backoffRatio));
+    batchSize = Math.max(minBatchSize, (int)(batchSize * backoffRatio));
+    log.warn("Backing off Oracle writes to {} concurrent and {} rows per batch after {}", concurrencyLimit, batchSize, reason);
+  }
+
+  static boolean isOverload(Throwable error) {
+    for(Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if(cause instanceof SQLTransientException || cause instanceof QueryTimeoutException
+          || cause instanceof TransactionTimedOutException || cause instanceof CannotCreateTransactionException) {
+        return true;
+      }
+      if(cause instanceof SQLException) {
+        int errorCode = ((SQLException)cause).getErrorCode();
+        if(errorCode == ORA_DEADLOCK || errorCode == ORA_CANCELLED) {
+          return true;
+        }
+      }
+      if(cause.getCause() == cause) {
+        break;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.mishima.sync.processor;
+
+import com.google.gson.JsonObject;
+import com.mishima.sync.model.ChangeCaptureEvent;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Appends events that could not be applied to a local file, one JSON record per line. Each record
+ * holds the event's identity, when a single event was given up on, the reason and the body of the
+ * message it came from, so it can be inspected or replayed later.
+ */
+@Slf4j
+public class DeadLetterSink implements Closeable {
+
+  private final Path path;
+  private final BufferedWriter writer;
+
+  public DeadLetterSink(Path path) throws IOException {
+    this.path = path;
+    Path parent = path.toAbsolutePath().getParent();
+    if(parent != null) {
+      Files.createDirectories(parent);
+    }
+    this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+    log.info("Writing dead letters to {}", path.toAbsolutePath());
+  }
+
+  public void write(String messageId, String messageBody, ChangeCaptureEvent e, int attempts, String reason) throws IOException {
+    JsonObject record = record(messageId);
+    record.addProperty("objectType", e.getObjectType());
+    record.addProperty("objectId", e.getObjectId());
+    record.addProperty("action", e.getAction());
+    write(record, messageBody, attempts, reason);
+  }
+
+  /**
+   * Writes a whole message that could not be applied, without singling out any of its events.
+   */
+  public void write(String messageId, String messageBody, int attempts, String reason) throws IOException {
+    write(record(messageId), messageBody, attempts, reason);
+  }
+
+  private static JsonObject record(String messageId) {
+    JsonObject record = new JsonObject();
+    record.addProperty("timestamp", Instant.now().toString());
+    record.addProperty("messageId", messageId);
+    return record;
+  }
+
+  private synchronized void write(JsonObject record, String messageBody, int attempts, String reason) throws IOException {
+    record.addProperty("attempts", attempts);
+    record.addProperty("reason", reason);
+    record.addProperty("body", messageBody);
+    writer.write(record.toString());
+    writer.newLine();
+    writer.flush();
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    writer.close();
+  }
+
+}
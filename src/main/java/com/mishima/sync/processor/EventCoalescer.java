@@ -0,0 +1,230 @@
+package com.mishima.sync.processor;
+
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.OdsRow;
+import com.mishima.sync.model.TableMetadata;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Buffers events for a short window and folds bursts of changes to the same record before they are
+ * applied. Within a window a create followed by an update becomes a single create, consecutive
+ * updates become the last update, a create followed by a delete is dropped and an update followed
+ * by a delete becomes the delete. Changes that cannot be folded are passed on in arrival order.
+ *
+ * <p>Each event is submitted with a context, typically its source message. The future returned on
+ * submission completes once the event it was folded into has been applied downstream.
+ *
+ * <p>At most {@code maxPendingRecords} records are buffered. The submission that reaches the limit
+ * flushes early on the submitting thread, so when downstream is slow to accept events the
+ * submitter waits instead of the buffer growing.
+ */
+@Slf4j
+public class EventCoalescer<C> {
+
+  private final long windowMillis;
+  private final int maxPendingRecords;
+  private final BiFunction<ChangeCaptureEvent, C, CompletableFuture<Void>> downstream;
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  private Map<String, PendingChanges> pending = new LinkedHashMap<>();
+  // Held while passing a flushed buffer downstream, so two flushes never reorder a record's changes
+  private final Object flushLock = new Object();
+
+  private final LongAdder received = new LongAdder();
+  private final LongAdder emitted = new LongAdder();
+  private final LongAdder folded = new LongAdder();
+  private final LongAdder cancelled = new LongAdder();
+
+  public EventCoalescer(long windowMillis, int maxPendingRecords,
+      BiFunction<ChangeCaptureEvent, C, CompletableFuture<Void>> downstream) {
+    this.windowMillis = windowMillis;
+    this.maxPendingRecords = maxPendingRecords;
+    this.downstream = downstream;
+  }
+
+  public void start() {
+    scheduler.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    log.info("Coalescing events over a {}ms window", windowMillis);
+  }
+
+  public void stop() {
+    scheduler.shutdown();
+    flush();
+  }
+
+  public CompletableFuture<Void> submit(ChangeCaptureEvent event, C context) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    boolean full;
+    synchronized(this) {
+      received.increment();
+      PendingChanges changes = pending.computeIfAbsent(event.getObjectId(), id -> new PendingChanges());
+      changes.add(event, context);
+      changes.waiters.add(future);
+      full = pending.size() >= maxPendingRecords;
+    }
+    if(full) {
+      flush();
+    }
+    return future;
+  }
+
+  /**
+   * Passes everything buffered so far downstream. Called on every window tick, and early by a
+   * submission that fills the buffer.
+   */
+  public void flush() {
+    synchronized(flushLock) {
+      Map<String, PendingChanges> flushed;
+      synchronized(this) {
+        if(pending.isEmpty()) {
+          return;
+        }
+        flushed = pending;
+        pending = new LinkedHashMap<>();
+      }
+      emit(flushed);
+    }
+  }
+
+  private void emit(Map<String, PendingChanges> flushed) {
+    flushed.values().forEach(changes -> {
+      List<CompletableFuture<Void>> applied = new ArrayList<>();
+      try {
+        changes.events.forEach(change -> {
+          emitted.increment();
+          applied.add(downstream.apply(change.event, change.context));
+        });
+      } catch(Exception ex) {
+        log.error("Error passing coalesced events downstream -> {}", ex.getMessage());
+        applied.add(CompletableFuture.failedFuture(ex));
+      }
+      CompletableFuture.allOf(applied.toArray(new CompletableFuture[0])).whenComplete((result, ex) ->
+          changes.waiters.forEach(waiter -> {
+            if(ex == null) {
+              waiter.complete(null);
+            } else {
+              waiter.completeExceptionally(ex);
+            }
+          }));
+    });
+  }
+
+  public long getReceived() {
+    return received.sum();
+  }
+
+  public long getEmitted() {
+    return emitted.sum();
+  }
+
+  public long getFolded() {
+    return folded.sum();
+  }
+
+  public long getCancelled() {
+    return cancelled.sum();
+  }
+
+  @AllArgsConstructor
+  private static class Change<C> {
+
+    private final ChangeCaptureEvent event;
+    private final C context;
+
+  }
+
+  private class PendingChanges {
+
+    private final LinkedList<Change<C>> events = new LinkedList<>();
+    private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+    private void add(ChangeCaptureEvent next, C context) {
+      if(events.isEmpty()) {
+        events.add(new Change<>(next, context));
+        return;
+      }
+      ChangeCaptureEvent last = events.getLast().event;
+      switch(last.getAction() + next.getAction()) {
+        case "CU":
+          events.set(events.size() - 1, new Change<>(merge(last, next, "C"), context));
+          folded.increment();
+          break;
+        case "UU":
+          events.set(events.size() - 1, new Change<>(merge(last, next, "U"), context));
+          folded.increment();
+          break;
+        case "CD":
+          events.removeLast();
+          cancelled.increment();
+          break;
+        case "UD":
+          events.set(events.size() - 1, new Change<>(next, context));
+          folded.increment();
+          break;
+        default:
+          events.add(new Change<>(next, context));
+      }
+    }
+
+  }
+
+  /**
+   * The later event's full payload and decoded row supersede the earlier ones, keeping any fields
+   * only the earlier event carried. Changed field values accumulate so delta updates still cover
+   * every change.
+   */
+  private static ChangeCaptureEvent merge(ChangeCaptureEvent earlier, ChangeCaptureEvent later, String action) {
+    return ChangeCaptureEvent.builder()
+        .userName(later.getUserName())
+        .action(action)
+        .objectId(later.getObjectId())
+        .objectType(later.getObjectType())
+        .objectName(later.getObjectName())
+        .createdTime(later.getCreatedTime())
+        .oldFieldValues(earlier.getOldFieldValues())
+        .newFieldValues(mergeMaps(earlier.getNewFieldValues(), later.getNewFieldValues()))
+        .fullPayload(mergeMaps(earlier.getFullPayload(), later.getFullPayload()))
+        .row(mergeRows(earlier.getRow(), later.getRow()))
+        .build();
+  }
+
+  private static OdsRow mergeRows(OdsRow earlier, OdsRow later) {
+    if(earlier == null || later == null) {
+      return later != null? later: earlier;
+    }
+    TableMetadata table = later.getTable();
+    TableMetadata earlierTable = earlier.getTable();
+    Object[] values = later.getValues().clone();
+    for(int i = 0; i < earlierTable.size(); i++) {
+      // The table may have been reloaded between the two events, so match columns by name
+      int column = earlierTable == table? i: table.indexOf(earlierTable.getColumn(i).getColumnName());
+      if(column >= 0 && values[column] == null) {
+        values[column] = earlier.getValues()[i];
+      }
+    }
+    return new OdsRow(table, values);
+  }
+
+  private static Map<String,Object> mergeMaps(Map<String,Object> earlier, Map<String,Object> later) {
+    if(earlier == null || later == null) {
+      return later != null? later: earlier;
+    }
+    Map<String,Object> merged = new HashMap<>(earlier);
+    merged.putAll(later);
+    return merged;
+  }
+
+}
@@ -0,0 +1,298 @@
+package com.mishima.sync.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs tasks on a fixed set of single-threaded partitions. Tasks submitted with the same partition
+ * key always run on the same partition in submission order, while tasks for different keys run
+ * concurrently. Each partition has a bounded queue and submission blocks while it is full.
+ *
+ * <p>With group commit enabled, a partition runs the tasks it takes within a window in a single
+ * transaction and completes their futures only once it commits, so one commit covers many tasks.
+ * A group whose transaction fails is split in half and each half retried in its own transaction
+ * until the failing task is isolated, and only that task fails.
+ *
+ * <p>With a limiter, each task or group waits for a slot under the limiter's concurrency limit
+ * before it starts and reports its latency, rows and outcome when done. While the limiter is
+ * enabled, groups are further capped at its batch size. The latency leaves out time a group spends waiting for tasks
+ * to arrive, so it covers only running the tasks and committing.
+ */
+@Slf4j
+public class PartitionedExecutor {
+
+  private final List<Partition> partitions = new ArrayList<>();
+  private final TransactionTemplate transactionTemplate;
+  private final int maxGroupWeight;
+  private final long maxGroupDelayMillis;
+  private final AdaptiveLimiter limiter;
+
+  private final LongAdder groupsCommitted = new LongAdder();
+  private final LongAdder groupsSplit = new LongAdder();
+
+  private volatile boolean running = true;
+
+  public PartitionedExecutor(String name, int partitionCount, int queueCapacity) {
+    this(name, partitionCount, queueCapacity, null, 1, 0);
+  }
+
+  /**
+   * Creates an executor that commits groups of tasks in a transaction once their combined weight
+   * reaches the maximum or the first of them has waited the maximum delay.
+   */
+  public PartitionedExecutor(String name, int partitionCount, int queueCapacity, TransactionTemplate transactionTemplate,
+      int maxGroupWeight, long maxGroupDelayMillis) {
+    this(name, partitionCount, queueCapacity, transactionTemplate, maxGroupWeight, maxGroupDelayMillis, null);
+  }
+
+  public PartitionedExecutor(String name, int partitionCount, int queueCapacity, TransactionTemplate transactionTemplate,
+      int maxGroupWeight, long maxGroupDelayMillis, AdaptiveLimiter limiter) {
+    this.limiter = limiter;
+    this.transactionTemplate = transactionTemplate;
+    this.maxGroupWeight = maxGroupWeight;
+    this.maxGroupDelayMillis = maxGroupDelayMillis;
+    for(int i = 0; i < partitionCount; i++) {
+      Partition partition = new Partition(new ArrayBlockingQueue<>(queueCapacity));
+      Thread thread = new Thread(partition, name + "-" + i);
+      thread.setDaemon(true);
+      thread.start();
+      partitions.add(partition);
+    }
+    log.info("Started {} partitions for {} with queue capacity {}{}", partitionCount, name, queueCapacity,
+        isGroupCommit()? ", committing up to " + maxGroupWeight + " rows or " + maxGroupDelayMillis + "ms at once": "");
+  }
+
+  public int partitionFor(String partitionKey) {
+    return Math.floorMod(partitionKey.hashCode(), partitions.size());
+  }
+
+  public CompletableFuture<Void> submit(String partitionKey, Runnable task) throws InterruptedException {
+    return submitToPartition(partitionFor(partitionKey), task);
+  }
+
+  public CompletableFuture<Void> submitToPartition(int partition, Runnable task) throws InterruptedException {
+    return submitToPartition(partition, task, 1);
+  }
+
+  /**
+   * Submits a task counting as the given number of rows towards the size of a commit group.
+   */
+  public CompletableFuture<Void> submitToPartition(int partition, Runnable task, int weight) throws InterruptedException {
+    PartitionTask partitionTask = new PartitionTask(task, new CompletableFuture<>(), weight);
+    partitions.get(partition).queue.put(partitionTask);
+    return partitionTask.future;
+  }
+
+  public void shutdown() {
+    running = false;
+  }
+
+  public long getGroupsCommitted() {
+    return groupsCommitted.sum();
+  }
+
+  public long getGroupsSplit() {
+    return groupsSplit.sum();
+  }
+
+  private boolean isGroupCommit() {
+    return transactionTemplate != null && maxGroupWeight > 1;
+  }
+
+  @RequiredArgsConstructor
+  private static class PartitionTask {
+
+    private final Runnable task;
+    private final CompletableFuture<Void> future;
+    private final int weight;
+    // Failure of a task that left the transaction usable, reported once the group commits
+    private Exception failure;
+
+  }
+
+  // Thrown to roll back a group once a task has left its transaction unable to commit
+  private static class GroupFailedException extends RuntimeException {
+
+    private GroupFailedException(Exception cause) {
+      super(cause);
+    }
+
+  }
+
+  // Carries an interrupt out of the transaction callback, rolling the group back
+  private static class InterruptedGroupException extends RuntimeException {
+  }
+
+  @RequiredArgsConstructor
+  private class Partition implements Runnable {
+
+    private final BlockingQueue<PartitionTask> queue;
+    // Rows written and time spent waiting for tasks by the task or group last run
+    private int rows;
+    private long waitedNanos;
+
+    @Override
+    public void run() {
+      while(running || !queue.isEmpty()) {
+        try {
+          PartitionTask partitionTask = queue.poll(1, TimeUnit.SECONDS);
+          if(partitionTask == null) {
+            continue;
+          }
+          if(limiter == null) {
+            run(partitionTask);
+            continue;
+          }
+          try {
+            limiter.acquire();
+          } catch(InterruptedException ex) {
+            partitionTask.future.cancel(false);
+            throw ex;
+          }
+          long start = System.nanoTime();
+          rows = partitionTask.weight;
+          waitedNanos = 0;
+          Exception error = null;
+          try {
+            error = run(partitionTask);
+          } finally {
+            limiter.release(System.nanoTime() - start - waitedNanos, rows, error);
+          }
+        } catch(InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+
+    // Returns the error the task, or the commit of its group, failed with
+    private Exception run(PartitionTask partitionTask) throws InterruptedException {
+      return isGroupCommit()? runGroup(partitionTask): runSingle(partitionTask);
+    }
+
+    private Exception runSingle(PartitionTask partitionTask) {
+      try {
+        partitionTask.task.run();
+        partitionTask.future.complete(null);
+        return null;
+      } catch(Exception ex) {
+        partitionTask.future.completeExceptionally(ex);
+        return ex;
+      }
+    }
+
+    /**
+     * Starts a transaction with the given task and keeps taking tasks into it until the group is
+     * full or the window has passed, then commits.
+     */
+    private Exception runGroup(PartitionTask first) throws InterruptedException {
+      List<PartitionTask> group = new ArrayList<>();
+      long deadline = System.currentTimeMillis() + maxGroupDelayMillis;
+      int groupWeight = limiter == null || !limiter.isEnabled()? maxGroupWeight: Math.min(maxGroupWeight, limiter.getBatchSize());
+      try {
+        transactionTemplate.execute(status -> {
+          int weight = 0;
+          PartitionTask next = first;
+          while(next != null) {
+            group.add(next);
+            runInTransaction(next, status);
+            weight += next.weight;
+            rows = weight;
+            if(weight >= groupWeight) {
+              break;
+            }
+            long waitStart = System.nanoTime();
+            next = pollUntil(deadline);
+            waitedNanos += System.nanoTime() - waitStart;
+          }
+          return null;
+        });
+        completeGroup(group);
+        return null;
+      } catch(InterruptedGroupException ex) {
+        group.forEach(partitionTask -> partitionTask.future.cancel(false));
+        Thread.currentThread().interrupt();
+        throw new InterruptedException();
+      } catch(RuntimeException ex) {
+        if(group.size() == 1) {
+          fail(group.get(0), ex);
+          return ex;
+        }
+        log.warn("Commit of {} tasks failed, retrying them in smaller groups -> {}", group.size(), ex.getMessage());
+        groupsSplit.increment();
+        retry(group);
+        return ex;
+      }
+    }
+
+    // Retries each half of a failed group in its own transaction, splitting further until the failing task is alone
+    private void retry(List<PartitionTask> group) {
+      int half = group.size() / 2;
+      for(List<PartitionTask> part: List.of(group.subList(0, half), group.subList(half, group.size()))) {
+        try {
+          part.forEach(partitionTask -> partitionTask.failure = null);
+          transactionTemplate.execute(status -> {
+            part.forEach(partitionTask -> runInTransaction(partitionTask, status));
+            return null;
+          });
+          completeGroup(part);
+        } catch(RuntimeException ex) {
+          if(part.size() == 1) {
+            fail(part.get(0), ex);
+          } else {
+            groupsSplit.increment();
+            retry(part);
+          }
+        }
+      }
+    }
+
+    private void runInTransaction(PartitionTask partitionTask, TransactionStatus status) {
+      try {
+        partitionTask.task.run();
+      } catch(Exception ex) {
+        partitionTask.failure = ex;
+      }
+      // A task may leave the transaction rollback-only even when it handled the error itself
+      if(status.isRollbackOnly()) {
+        throw new GroupFailedException(partitionTask.failure != null? partitionTask.failure:
+            new IllegalStateException("Transaction marked rollback-only"));
+      }
+    }
+
+    private void fail(PartitionTask partitionTask, RuntimeException ex) {
+      partitionTask.future.completeExceptionally(ex instanceof GroupFailedException? ex.getCause(): ex);
+    }
+
+    private void completeGroup(List<PartitionTask> group) {
+      groupsCommitted.increment();
+      for(PartitionTask partitionTask: group) {
+        if(partitionTask.failure == null) {
+          partitionTask.future.complete(null);
+        } else {
+          partitionTask.future.completeExceptionally(partitionTask.failure);
+        }
+      }
+    }
+
+    private PartitionTask pollUntil(long deadline) {
+      long remaining = deadline - System.currentTimeMillis();
+      try {
+        return remaining > 0? queue.poll(remaining, TimeUnit.MILLISECONDS): queue.poll();
+      } catch(InterruptedException ex) {
+        throw new InterruptedGroupException();
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,139 @@
+package com.mishima.sync.processor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs retries in-process after an exponentially growing delay. The delay for an attempt is drawn
+ * between half and all of {@code baseDelay * 2^(attempt - 1)}, capped at the maximum delay, so
+ * retries of events that failed together spread out rather than arriving in step.
+ *
+ * <p>Each scheduled retry returns a future that completes with the outcome of the retried task.
+ * Retries still waiting when the scheduler stops are cancelled.
+ */
+@Slf4j
+public class RetryScheduler {
+
+  private final String name;
+  private final long baseDelayMillis;
+  private final long maxDelayMillis;
+  private final int maxAttempts;
+  private final DelayQueue<ScheduledRetry<?>> queue = new DelayQueue<>();
+
+  private volatile boolean running;
+  private Thread thread;
+
+  public RetryScheduler(String name, long baseDelayMillis, long maxDelayMillis, int maxAttempts) {
+    this.name = name;
+    this.baseDelayMillis = baseDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+    this.maxAttempts = maxAttempts;
+  }
+
+  public void start() {
+    running = true;
+    thread = new Thread(this::run, name);
+    thread.setDaemon(true);
+    thread.start();
+    log.info("Retrying up to {} attempts with backoff from {}ms to {}ms", maxAttempts, baseDelayMillis, maxDelayMillis);
+  }
+
+  public void stop() throws InterruptedException {
+    running = false;
+    if(thread != null) {
+      thread.interrupt();
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    // Polling a delay queue only returns expired entries, so pending retries are removed individually
+    for(ScheduledRetry<?> retry: queue) {
+      if(queue.remove(retry)) {
+        retry.result.completeExceptionally(new CancellationException("Retry scheduler stopped"));
+      }
+    }
+  }
+
+  /**
+   * Whether a task that has failed the given number of attempts may be retried.
+   */
+  public boolean canRetry(int attempt) {
+    return attempt < maxAttempts;
+  }
+
+  public long delayFor(int attempt) {
+    long ceiling = baseDelayMillis << Math.min(attempt - 1, 30);
+    if(ceiling <= 0 || ceiling > maxDelayMillis) {
+      ceiling = maxDelayMillis;
+    }
+    long half = ceiling / 2;
+    return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+  }
+
+  public <T> CompletableFuture<T> schedule(long delayMillis, Supplier<CompletableFuture<T>> task) {
+    ScheduledRetry<T> retry = new ScheduledRetry<>(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), task);
+    if(!running) {
+      retry.result.completeExceptionally(new CancellationException("Retry scheduler stopped"));
+      return retry.result;
+    }
+    queue.add(retry);
+    return retry.result;
+  }
+
+  public int getPending() {
+    return queue.size();
+  }
+
+  private void run() {
+    while(running) {
+      try {
+        queue.take().run();
+      } catch(InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static class ScheduledRetry<T> implements Delayed {
+
+    private final long dueNanos;
+    private final Supplier<CompletableFuture<T>> task;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    private ScheduledRetry(long dueNanos, Supplier<CompletableFuture<T>> task) {
+      this.dueNanos = dueNanos;
+      this.task = task;
+    }
+
+    private void run() {
+      try {
+        task.get().whenComplete((value, ex) -> {
+          if(ex == null) {
+            result.complete(value);
+          } else {
+            result.completeExceptionally(ex);
+          }
+        });
+      } catch(Exception ex) {
+        result.completeExceptionally(ex);
+      }
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+  }
+
+}
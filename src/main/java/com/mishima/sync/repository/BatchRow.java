@@ -0,0 +1,14 @@
+package com.mishima.sync.repository;
+
+import com.mishima.sync.model.ChangeCaptureEvent;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+class BatchRow {
+
+  private final ChangeCaptureEvent event;
+  private final Object[] values;
+
+}
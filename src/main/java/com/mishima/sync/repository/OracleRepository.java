@@ -2,21 +2,39 @@ package com.mishima.sync.repository;
 
 import static com.mishima.sync.util.OdsSchemaUtils.mapObjectNameToOdsColumnName;
 import static com.mishima.sync.util.OdsSchemaUtils.mapObjectTypeToOdsTableName;
+import static com.mishima.sync.util.OdsSchemaUtils.VERSION_COLUMN;
 
+import com.mishima.sync.metrics.SyncMetrics;
 import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.ColumnType;
+import com.mishima.sync.model.TableMetadata;
+import com.mishima.sync.processor.AdaptiveLimiter;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.Query;
 import javax.transaction.Transactional;
-import lombok.Builder;
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
@@ -31,165 +49,556 @@ public class OracleRepository {
   @PersistenceContext
   private EntityManager entityManager;
 
-  @Value("${spring.datasource.username}")
-  private String odsSchemaName;
+  @Autowired
+  private OracleSchemaRegistry oracleSchemaRegistry;
 
-  private final Map<String, SortedSet<ColumnMetadata>> oracleSchemaMetadata = new HashMap<>();
-  private final Map<String, Map<String,String>> oracleSchemaColumnDatatypes = new HashMap<>();
+  @Autowired
+  private SyncMetrics syncMetrics;
 
-  @PostConstruct
-  private void init() {
-    initializeOracleSchemaColumns();
-  }
+  // Sets the rows per JDBC batch when adapting to Oracle latency
+  @Autowired
+  private AdaptiveLimiter adaptiveLimiter;
+
+  @Value("${sync.oracle.batch-size:500}")
+  private int batchSize;
+
+  // Text for CLOB columns longer than this many characters is bound as a character stream
+  @Value("${sync.oracle.clob-stream-threshold:32000}")
+  private int clobStreamThreshold;
+
+  // Update only the columns present in newFieldValues instead of rewriting every column
+  @Value("${sync.oracle.delta-updates:false}")
+  private boolean deltaUpdatesEnabled;
+
+  private static final String ID_COLUMN = "id";
+
+  // Oracle error code and standard SQL state of a unique constraint violation
+  private static final int ORA_UNIQUE_CONSTRAINT = 1;
+  private static final String UNIQUE_VIOLATION_STATE = "23505";
+
+  // Generated statements keyed by table, statement type and the set of bound columns
+  private final Map<StatementPlanKey, StatementPlan> statementPlanCache = new ConcurrentHashMap<>();
+
+  // Schema version the plan cache was last purged for
+  private volatile long planCacheSchemaVersion;
 
+  // A duplicate key is handled by the caller updating instead, so it must not doom a shared transaction
+  @Transactional(dontRollbackOn = ConstraintViolationException.class)
   public int doCreate(ChangeCaptureEvent e) {
     log.debug("Processing create for objectType {} id {}", e.getObjectType(), e.getObjectId());
-    Map<String,Object> payload = convertPayload(e);
-    String odsTableName = mapObjectTypeToOdsTableName(e.getObjectType());
-    final String[] delimiter = {""};
-    final StringBuilder queryBuilder = new StringBuilder("INSERT INTO " + odsTableName + "(");
-    oracleSchemaMetadata.get(odsTableName).forEach(metadata -> {
-      if(payload.getOrDefault(metadata.getColumnName(), null) != null) {
-        queryBuilder.append(delimiter[0]).append(metadata.getColumnName());
-        delimiter[0] = ", ";
+    TableMetadata table = getTable(e);
+    Object[] values = convertPayload(table, e);
+    StatementPlan plan = getStatementPlan(table, StatementType.INSERT, boundColumns(table, StatementType.INSERT, values));
+    return execute(table, "C", plan, values, e.getObjectId());
+  }
+
+  /**
+   * Updates the record, returning the number of rows updated. A row the version guard left alone,
+   * because it already holds this change or a later one, counts as updated, so zero always means
+   * the record is not there yet.
+   */
+  public int doUpdate(ChangeCaptureEvent e) {
+    log.debug("Processing update for objectType {} id {}", e.getObjectType(), e.getObjectId());
+    TableMetadata table = getTable(e);
+    if(deltaUpdatesEnabled && e.getNewFieldValues() != null && !e.getNewFieldValues().isEmpty()) {
+      Object[] values = new Object[table.size()];
+      BitSet boundColumns = new BitSet(values.length);
+      BitSet nullColumns = new BitSet(values.length);
+      e.getNewFieldValues().forEach((objectName, value) -> {
+        int column = table.indexOf(mapObjectNameToOdsColumnName(objectName));
+        if(column >= 0) {
+          values[column] = table.getColumn(column).getColumnType().convert(value);
+          (value == null? nullColumns: boundColumns).set(column);
+        }
+      });
+      if(stampVersion(table, e, values)) {
+        boundColumns.set(table.indexOf(VERSION_COLUMN));
       }
-    });
-    queryBuilder.append(") VALUES (");
-    delimiter[0] = "";
-    final Integer[] paramIndex = {0};
-    oracleSchemaMetadata.get(odsTableName).forEach(metadata -> {
-      if(payload.getOrDefault(metadata.getColumnName(), null) != null) {
-        queryBuilder.append(delimiter[0]).append(wrapParameter(odsTableName, metadata.getColumnName(), paramIndex[0]++));
-        delimiter[0] = ", ";
+      if(!boundColumns.isEmpty() || !nullColumns.isEmpty()) {
+        StatementPlan plan = getStatementPlan(table, StatementType.DELTA_UPDATE, boundColumns, nullColumns);
+        return executeUpdate(table, plan, values, e.getObjectId());
       }
+      log.debug("No changed fields map to columns of {}, applying full payload", table.getName());
+    }
+    Object[] values = convertPayload(table, e);
+    StatementPlan plan = getStatementPlan(table, StatementType.UPDATE, boundColumns(table, StatementType.UPDATE, values));
+    return executeUpdate(table, plan, values, e.getObjectId());
+  }
+
+  public int doDelete(ChangeCaptureEvent e) {
+    log.debug("Processing delete for objectType {} id {}", e.getObjectType(), e.getObjectId());
+    TableMetadata table = getTable(e);
+    StatementPlan plan = getStatementPlan(table, StatementType.DELETE, new BitSet());
+    return execute(table, "D", plan, new Object[0], e.getObjectId());
+  }
+
+  /**
+   * Inserts or updates the record in a single MERGE statement keyed on the record id, so replayed
+   * creates and updates that arrive before their create are applied without relying on exceptions.
+   * A row rejected by another constraint is left to the caller, as with {@link #doCreate}.
+   */
+  @Transactional(dontRollbackOn = ConstraintViolationException.class)
+  public int doUpsert(ChangeCaptureEvent e) {
+    log.debug("Processing upsert for objectType {} id {}", e.getObjectType(), e.getObjectId());
+    TableMetadata table = getTable(e);
+    Object[] values = convertPayload(table, e);
+    StatementPlan plan = getStatementPlan(table, StatementType.MERGE, boundColumns(table, StatementType.MERGE, values));
+    return execute(table, e.getAction(), plan, values, e.getObjectId());
+  }
+
+  /**
+   * Inserts the events as JDBC batches, one batch per table and column shape. Rows rejected by a
+   * constraint violation do not fail the batch and are returned to the caller instead.
+   */
+  public List<ChangeCaptureEvent> bulkDoCreate(List<ChangeCaptureEvent> events) {
+    log.debug("Processing bulk update of {} events", events.size());
+    List<ChangeCaptureEvent> rejected = bulkExecute(events, StatementType.INSERT, false, this::isConstraintViolation);
+    if(!rejected.isEmpty()) {
+      syncMetrics.recordConstraintFallbacks("batch", rejected.size());
+    }
+    return rejected;
+  }
+
+  /**
+   * Inserts the events binding every column, nulls included, so all rows for a table share one
+   * statement and fill whole batches however sparse they are. Rows rejected by a unique constraint,
+   * already present from an earlier attempt, are returned to the caller; any other constraint
+   * violation fails the load.
+   */
+  public List<ChangeCaptureEvent> bulkDoLoad(List<ChangeCaptureEvent> events) {
+    log.debug("Processing bulk load of {} events", events.size());
+    return bulkExecute(events, StatementType.INSERT, true, this::isUniqueViolation);
+  }
+
+  /**
+   * Upserts the events as JDBC batches of MERGE statements, one batch per table and column shape.
+   * Rows rejected by a constraint violation are returned to the caller.
+   */
+  public List<ChangeCaptureEvent> bulkDoUpsert(List<ChangeCaptureEvent> events) {
+    log.debug("Processing bulk upsert of {} events", events.size());
+    List<ChangeCaptureEvent> rejected = bulkExecute(events, StatementType.MERGE, false, this::isConstraintViolation);
+    if(!rejected.isEmpty()) {
+      syncMetrics.recordConstraintFallbacks("batch", rejected.size());
+    }
+    return rejected;
+  }
+
+  // Rows failing with an exception the predicate accepts are returned, any other failure is thrown
+  private List<ChangeCaptureEvent> bulkExecute(List<ChangeCaptureEvent> events, StatementType type, boolean bindAllColumns,
+      Predicate<SQLException> rejectable) {
+    Map<StatementPlan, List<BatchRow>> batches = new LinkedHashMap<>();
+    Map<StatementPlan, TableMetadata> batchTables = new HashMap<>();
+    events.forEach(e -> {
+      TableMetadata table = getTable(e);
+      Object[] values = convertPayload(table, e);
+      BitSet boundColumns = bindAllColumns? allColumns(table): boundColumns(table, type, values);
+      StatementPlan plan = getStatementPlan(table, type, boundColumns);
+      batches.computeIfAbsent(plan, p -> new ArrayList<>()).add(new BatchRow(e, values));
+      batchTables.putIfAbsent(plan, table);
     });
-    queryBuilder.append(")");
-    String queryString = queryBuilder.toString();
-    log.debug("Generated query: {}", queryString);
-    paramIndex[0] = 0;
-    final Query query = entityManager.createNativeQuery(queryString);
-    oracleSchemaMetadata.get(mapObjectTypeToOdsTableName(e.getObjectType())).forEach(metadata -> {
-        if(payload.getOrDefault(metadata.getColumnName(), null) != null) {
-          query.setParameter("param_" + paramIndex[0]++, convertBooleanToNumber(payload.get(metadata.getColumnName())));
-        }
-      });
-      return query.executeUpdate();
+    List<ChangeCaptureEvent> rejected = new ArrayList<>();
+    batches.forEach((plan, rows) -> {
+      long start = System.nanoTime();
+      rejected.addAll(executeBatch(plan, rows, rejectable));
+      syncMetrics.recordBatchExecute(batchTables.get(plan).getName(), type.name().toLowerCase(), System.nanoTime() - start);
+    });
+    return rejected;
   }
 
-  public int doUpdate(ChangeCaptureEvent e) {
-    log.debug("Processing update for objectType {} id {}", e.getObjectType(), e.getObjectId());
-    Map<String,Object> payload = convertPayload(e);
+  private TableMetadata getTable(ChangeCaptureEvent e) {
     String odsTableName = mapObjectTypeToOdsTableName(e.getObjectType());
-    final String[] delimiter = {""};
-    final StringBuilder queryBuilder = new StringBuilder("UPDATE " + odsTableName + " SET ");
-    final Integer[] paramIndex = {0};
-    oracleSchemaMetadata.get(odsTableName).forEach(metadata -> {
-      queryBuilder.append(delimiter[0]).append(metadata.getColumnName()).append(" = ");
-      if(payload.getOrDefault(metadata.getColumnName(), null) == null) {
-        queryBuilder.append("null");
-      } else {
-        queryBuilder.append(wrapParameter(odsTableName, metadata.getColumnName(), paramIndex[0]++));
-      }
-      delimiter[0] = ", ";
+    TableMetadata table = oracleSchemaRegistry.getTable(odsTableName);
+    if(table == null) {
+      throw new IllegalStateException("No ODS table " + odsTableName + " found for object type " + e.getObjectType());
+    }
+    return table;
+  }
+
+  private StatementPlan getStatementPlan(TableMetadata table, StatementType type, BitSet boundColumns) {
+    return getStatementPlan(table, type, boundColumns, new BitSet());
+  }
+
+  private StatementPlan getStatementPlan(TableMetadata table, StatementType type, BitSet boundColumns,
+      BitSet nullColumns) {
+    long schemaVersion = oracleSchemaRegistry.getVersion();
+    if(schemaVersion != planCacheSchemaVersion) {
+      // Drop plans generated for tables whose columns have since been reloaded
+      statementPlanCache.keySet().removeIf(key -> oracleSchemaRegistry.getLoadedTable(key.getTable().getName()) != key.getTable());
+      planCacheSchemaVersion = schemaVersion;
+    }
+    StatementPlanKey planKey = new StatementPlanKey(table, type, boundColumns, nullColumns);
+    return statementPlanCache.computeIfAbsent(planKey, key -> {
+      long start = System.nanoTime();
+      StatementPlan plan = buildStatementPlan(table, type, boundColumns, nullColumns);
+      syncMetrics.recordStatementBuild(System.nanoTime() - start);
+      log.debug("Generated query: {}", plan.getSql());
+      return plan;
     });
-    queryBuilder.append(" WHERE id = :objectId");
-    String queryString = queryBuilder.toString();
-    log.debug("Generated query: " + queryString);
-    paramIndex[0] = 0;
-    Query query = entityManager.createNativeQuery(queryString);
-    oracleSchemaMetadata.get(mapObjectTypeToOdsTableName(e.getObjectType())).forEach(metadata -> {
-      if(payload.getOrDefault(metadata.getColumnName(), null) != null) {
-        query.setParameter("param_" + paramIndex[0]++, convertBooleanToNumber(payload.get(metadata.getColumnName())));
+  }
+
+  // Package-private, along with convertPayload and boundColumns, so the benchmarks can call it directly
+  StatementPlan buildStatementPlan(TableMetadata table, StatementType type, BitSet boundColumns,
+      BitSet nullColumns) {
+    StringBuilder queryBuilder = new StringBuilder();
+    int[] parameterColumns = boundColumns.stream().toArray();
+    ColumnType[] parameterTypes = new ColumnType[parameterColumns.length];
+    for(int i = 0; i < parameterColumns.length; i++) {
+      parameterTypes[i] = table.getColumn(parameterColumns[i]).getColumnType();
+    }
+    switch(type) {
+      case INSERT:
+        queryBuilder.append("INSERT INTO ").append(table.getName()).append("(");
+        appendColumnList(queryBuilder, table, parameterColumns);
+        queryBuilder.append(") VALUES (");
+        for(int i = 0; i < parameterColumns.length; i++) {
+          queryBuilder.append(i == 0? "?": ", ?");
+        }
+        queryBuilder.append(")");
+        return StatementPlan.builder().sql(queryBuilder.toString()).parameterColumns(parameterColumns)
+            .parameterTypes(parameterTypes).build();
+      case UPDATE:
+        queryBuilder.append("UPDATE ").append(table.getName()).append(" SET ");
+        for(int i = 0; i < table.size(); i++) {
+          queryBuilder.append(i == 0? "": ", ").append(table.getColumn(i).getColumnName()).append(" = ");
+          queryBuilder.append(boundColumns.get(i)? "?": "null");
+        }
+        queryBuilder.append(" WHERE id = ?");
+        appendVersionGuard(queryBuilder, table, boundColumns);
+        return StatementPlan.builder().sql(queryBuilder.toString()).parameterColumns(parameterColumns)
+            .parameterTypes(parameterTypes).bindsObjectId(true).versionColumn(guardedColumn(table, boundColumns)).build();
+      case DELTA_UPDATE:
+        queryBuilder.append("UPDATE ").append(table.getName()).append(" SET ");
+        String updateDelimiter = "";
+        for(int i = 0; i < table.size(); i++) {
+          if(boundColumns.get(i) || nullColumns.get(i)) {
+            queryBuilder.append(updateDelimiter).append(table.getColumn(i).getColumnName()).append(" = ")
+                .append(boundColumns.get(i)? "?": "null");
+            updateDelimiter = ", ";
+          }
+        }
+        queryBuilder.append(" WHERE id = ?");
+        appendVersionGuard(queryBuilder, table, boundColumns);
+        return StatementPlan.builder().sql(queryBuilder.toString()).parameterColumns(parameterColumns)
+            .parameterTypes(parameterTypes).bindsObjectId(true).versionColumn(guardedColumn(table, boundColumns)).build();
+      case MERGE:
+        // The record id is bound first and drives the join, so it is never part of the bound columns.
+        // A value selected from dual goes through SQL as a VARCHAR2, so CLOB values are bound directly
+        // in the update and insert clauses instead.
+        int idColumn = table.indexOf(ID_COLUMN);
+        int[] selectedColumns = boundColumns.stream().filter(column -> !isClob(table, column)).toArray();
+        int[] clobColumns = boundColumns.stream().filter(column -> isClob(table, column)).toArray();
+        int[] mergeColumns = IntStream.concat(IntStream.of(selectedColumns),
+            IntStream.concat(IntStream.of(clobColumns), IntStream.of(clobColumns))).toArray();
+        ColumnType[] mergeTypes = new ColumnType[mergeColumns.length];
+        for(int i = 0; i < mergeColumns.length; i++) {
+          mergeTypes[i] = table.getColumn(mergeColumns[i]).getColumnType();
+        }
+        queryBuilder.append("MERGE INTO ").append(table.getName()).append(" t USING (SELECT ? ").append(ID_COLUMN);
+        for(int column: selectedColumns) {
+          queryBuilder.append(", ? ").append(table.getColumn(column).getColumnName());
+        }
+        queryBuilder.append(" FROM dual) s ON (t.").append(ID_COLUMN).append(" = s.").append(ID_COLUMN).append(")");
+        String setDelimiter = " WHEN MATCHED THEN UPDATE SET ";
+        for(int i = 0; i < table.size(); i++) {
+          if(i != idColumn) {
+            queryBuilder.append(setDelimiter).append("t.").append(table.getColumn(i).getColumnName()).append(" = ")
+                .append(mergeValue(table, boundColumns, i));
+            setDelimiter = ", ";
+          }
+        }
+        if(guardedColumn(table, boundColumns) >= 0) {
+          queryBuilder.append(" WHERE t.").append(VERSION_COLUMN).append(" IS NULL OR t.").append(VERSION_COLUMN)
+              .append(" < s.").append(VERSION_COLUMN);
+        }
+        queryBuilder.append(" WHEN NOT MATCHED THEN INSERT (").append(ID_COLUMN);
+        for(int column: parameterColumns) {
+          queryBuilder.append(", ").append(table.getColumn(column).getColumnName());
+        }
+        queryBuilder.append(") VALUES (s.").append(ID_COLUMN);
+        for(int column: parameterColumns) {
+          queryBuilder.append(", ").append(mergeValue(table, boundColumns, column));
+        }
+        queryBuilder.append(")");
+        return StatementPlan.builder().sql(queryBuilder.toString()).parameterColumns(mergeColumns)
+            .parameterTypes(mergeTypes).bindsObjectId(true).objectIdFirst(true).build();
+      case DELETE:
+        queryBuilder.append("DELETE FROM ").append(table.getName()).append(" WHERE id = ?");
+        return StatementPlan.builder().sql(queryBuilder.toString()).parameterColumns(parameterColumns)
+            .parameterTypes(parameterTypes).bindsObjectId(true).build();
+      default:
+        throw new IllegalArgumentException("Unsupported statement type: " + type);
+    }
+  }
+
+  // Updates carrying a version only apply to rows holding an older one, so a late change never overwrites a newer one
+  private void appendVersionGuard(StringBuilder queryBuilder, TableMetadata table, BitSet boundColumns) {
+    if(guardedColumn(table, boundColumns) >= 0) {
+      queryBuilder.append(" AND (").append(VERSION_COLUMN).append(" IS NULL OR ").append(VERSION_COLUMN).append(" < ?)");
+    }
+  }
+
+  // The value a MERGE sets a column to, selected from the source row or, for a CLOB, bound in place
+  private String mergeValue(TableMetadata table, BitSet boundColumns, int column) {
+    if(!boundColumns.get(column)) {
+      return "null";
+    }
+    return isClob(table, column)? "?": "s." + table.getColumn(column).getColumnName();
+  }
+
+  private boolean isClob(TableMetadata table, int column) {
+    return table.getColumn(column).getColumnType() == ColumnType.CLOB;
+  }
+
+  private int guardedColumn(TableMetadata table, BitSet boundColumns) {
+    int versionColumn = table.indexOf(VERSION_COLUMN);
+    return versionColumn >= 0 && boundColumns.get(versionColumn)? versionColumn: -1;
+  }
+
+  private void appendColumnList(StringBuilder queryBuilder, TableMetadata table, int[] columns) {
+    String delimiter = "";
+    for(int column: columns) {
+      queryBuilder.append(delimiter).append(table.getColumn(column).getColumnName());
+      delimiter = ", ";
+    }
+  }
+
+  private int execute(TableMetadata table, String action, StatementPlan plan, Object[] values, String objectId) {
+    long start = System.nanoTime();
+    // Statements are prepared on the transaction's connection so the driver's statement cache can reuse the cursor
+    int rows = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+      try(PreparedStatement ps = connection.prepareStatement(plan.getSql())) {
+        bind(ps, plan, values, objectId);
+        return ps.executeUpdate();
       }
     });
-    query.setParameter("objectId", e.getObjectId());
+    syncMetrics.recordExecute(table.getName(), action, System.nanoTime() - start);
+    return rows;
+  }
 
-    return query.executeUpdate();
+  private int executeUpdate(TableMetadata table, StatementPlan plan, Object[] values, String objectId) {
+    int rows = execute(table, "U", plan, values, objectId);
+    if(rows == 0 && plan.getVersionColumn() >= 0 && isSuperseded(table, (BigDecimal)values[plan.getVersionColumn()], objectId)) {
+      log.debug("Object id {} already holds this or a later change, update is a no-op", objectId);
+      return 1;
+    }
+    return rows;
   }
 
-  public int doDelete(ChangeCaptureEvent e) {
-    log.debug("Processing delete for objectType {} id {}", e.getObjectType(), e.getObjectId());
-    return entityManager.createNativeQuery(
-        "DELETE FROM " + mapObjectTypeToOdsTableName(e.getObjectType()) + " WHERE id = :objectId")
-        .setParameter("objectId", e.getObjectId())
-        .executeUpdate();
+  // A guarded update matching no row either found no record or found one at this version or later
+  private boolean isSuperseded(TableMetadata table, BigDecimal version, String objectId) {
+    String sql = "SELECT " + VERSION_COLUMN + " FROM " + table.getName() + " WHERE " + ID_COLUMN + " = ?";
+    return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+      try(PreparedStatement ps = connection.prepareStatement(sql)) {
+        ps.setString(1, objectId);
+        try(ResultSet rs = ps.executeQuery()) {
+          if(!rs.next()) {
+            return false;
+          }
+          BigDecimal current = rs.getBigDecimal(1);
+          // Still older when a write by another instance got in between, the caller retries
+          return current != null && current.compareTo(version) >= 0;
+        }
+      }
+    });
   }
 
-  public void bulkDoCreate(List<ChangeCaptureEvent> events) {
-    log.debug("Processing bulk update of {} events", events.size());
-    events.forEach(this::doCreate);
-  }
-
-  private void initializeOracleSchemaColumns() {
-    log.info("Initializing schema mapping");
-    @SuppressWarnings("unchecked")
-    List<Object[]> results = entityManager.createNativeQuery("SELECT\n"
-        + "LOWER(t.table_name) tableName,\n"
-        + "LOWER(c.column_name) columnName,\n"
-        + "LOWER(c.data_type) dataType\n"
-        + "FROM\n"
-        + "all_tables t,\n"
-        + "all_tab_cols c\n"
-        + "WHERE t.owner = :schemaOwner\n"
-        + "AND t.table_name = c.table_name\n")
-        .setParameter("schemaOwner", odsSchemaName)
-        .getResultList();
-    results.forEach(objects -> {
-      String tableName = (String)objects[0];
-      String columnName = (String)objects[1];
-      String dataType = (String)objects[2];
-      if(!columnName.startsWith("_")) {
-        oracleSchemaMetadata.putIfAbsent(tableName, new TreeSet<>());
-        oracleSchemaMetadata
-            .get(tableName).add(ColumnMetadata.builder().columnName(columnName).dataType(dataType).build());
-        oracleSchemaColumnDatatypes.putIfAbsent(tableName, new HashMap<>());
-        oracleSchemaColumnDatatypes.get(tableName).put(columnName, dataType);
+  private List<ChangeCaptureEvent> executeBatch(StatementPlan plan, List<BatchRow> rows, Predicate<SQLException> rejectable) {
+    return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+      List<ChangeCaptureEvent> rejected = new ArrayList<>();
+      try(PreparedStatement ps = connection.prepareStatement(plan.getSql())) {
+        int rowsPerBatch = adaptiveLimiter.isEnabled()? adaptiveLimiter.getBatchSize(): batchSize;
+        int offset = 0;
+        while(offset < rows.size()) {
+          int end = Math.min(rows.size(), offset + rowsPerBatch);
+          for(int i = offset; i < end; i++) {
+            bind(ps, plan, rows.get(i).getValues(), rows.get(i).getEvent().getObjectId());
+            ps.addBatch();
+          }
+          try {
+            ps.executeBatch();
+            offset = end;
+          } catch(BatchUpdateException ex) {
+            ps.clearBatch();
+            if(!rejectable.test(ex)) {
+              throw ex;
+            }
+            int[] updateCounts = ex.getUpdateCounts();
+            if(updateCounts.length < end - offset) {
+              // Rows before the failing one were applied, resume after it
+              int failed = offset + updateCounts.length;
+              rejected.add(rows.get(failed).getEvent());
+              offset = failed + 1;
+            } else {
+              // Driver did not report which row failed, apply the remainder of the batch row by row
+              log.debug("Falling back to single row inserts for {} rows", end - offset);
+              for(int i = offset; i < end; i++) {
+                if(!executeSingle(ps, plan, rows.get(i), rejectable)) {
+                  rejected.add(rows.get(i).getEvent());
+                }
+              }
+              offset = end;
+            }
+          }
+        }
       }
+      log.debug("Inserted {} of {} rows using {}", rows.size() - rejected.size(), rows.size(), plan.getSql());
+      return rejected;
     });
-    log.info("Loaded column metadata for {} tables", oracleSchemaMetadata.size());
   }
 
-  private Map<String,Object> convertPayload(ChangeCaptureEvent e) {
-    Map<String,Object> convertedPayload = new HashMap<>();
-    e.getFullPayload().keySet().forEach(objectName ->
-        convertedPayload.put(mapObjectNameToOdsColumnName(objectName), e.getFullPayload().get(objectName)));
-    return convertedPayload;
+  private boolean executeSingle(PreparedStatement ps, StatementPlan plan, BatchRow row, Predicate<SQLException> rejectable)
+      throws SQLException {
+    bind(ps, plan, row.getValues(), row.getEvent().getObjectId());
+    try {
+      ps.executeUpdate();
+      return true;
+    } catch(SQLException ex) {
+      if(rejectable.test(ex)) {
+        return false;
+      }
+      throw ex;
+    }
   }
 
-  private Object convertBooleanToNumber(Object value) {
-    return value == null? null: value instanceof Boolean? (Boolean)value? 1: 0: value;
+  private boolean isConstraintViolation(SQLException ex) {
+    for(SQLException e = ex; e != null; e = e.getNextException()) {
+      if(e instanceof SQLIntegrityConstraintViolationException
+          || (e.getSQLState() != null && e.getSQLState().startsWith("23"))) {
+        return true;
+      }
+    }
+    return false;
   }
 
-  private String wrapParameter(String odsTableName, String odsColumnName, int paramIndex) {
-    String dataType = oracleSchemaColumnDatatypes.get(odsTableName).get(odsColumnName);
-    if(dataType.startsWith("timestamp")) {
-      return "TO_TIMESTAMP(:param_" + paramIndex + ",'YYYY-MM-DD\"T\"HH24:MI:SS.FF\"Z\"')";
-    } else if(dataType.equals("date")) {
-      return "TO_DATE(:param_" + paramIndex + ",'YYYY-MM-DD')";
-    } else {
-      return ":param_" + paramIndex;
+  private boolean isUniqueViolation(SQLException ex) {
+    for(SQLException e = ex; e != null; e = e.getNextException()) {
+      if(e.getErrorCode() == ORA_UNIQUE_CONSTRAINT || UNIQUE_VIOLATION_STATE.equals(e.getSQLState())) {
+        return true;
+      }
     }
+    return false;
   }
 
-  @Getter
-  @Builder
-  private static class ColumnMetadata implements Comparable<ColumnMetadata> {
+  private void bind(PreparedStatement ps, StatementPlan plan, Object[] values, String objectId) throws SQLException {
+    int[] parameterColumns = plan.getParameterColumns();
+    int paramIndex = 1;
+    if(plan.isObjectIdFirst()) {
+      ps.setString(paramIndex++, objectId);
+    }
+    for(int i = 0; i < parameterColumns.length; i++) {
+      bindValue(ps, paramIndex++, plan.getParameterTypes()[i], values[parameterColumns[i]]);
+    }
+    if(plan.isBindsObjectId() && !plan.isObjectIdFirst()) {
+      ps.setString(paramIndex++, objectId);
+    }
+    if(plan.getVersionColumn() >= 0) {
+      bindValue(ps, paramIndex, ColumnType.NUMBER, values[plan.getVersionColumn()]);
+    }
+  }
 
-    private final String columnName;
-    private final String dataType;
+  Object[] convertPayload(TableMetadata table, ChangeCaptureEvent e) {
+    Object[] values = convertFields(table, e);
+    stampVersion(table, e, values);
+    return values;
+  }
 
-    public int compareTo(ColumnMetadata o) {
-      if (dataType.equals("clob") && o.dataType.equals("clob")) {
-        return columnName.compareTo(o.columnName);
-      } else if (dataType.equals("clob")) {
-        return 1; // Always last;
-      } else if (o.dataType.equals("clob")) {
-        return -1; // Always last;
-      } else {
-        return columnName.compareTo(o.columnName);
+  /**
+   * Sets the version column, when the table has one, to the time of the change. Returns whether a
+   * version was set.
+   */
+  private boolean stampVersion(TableMetadata table, ChangeCaptureEvent e, Object[] values) {
+    int versionColumn = table.indexOf(VERSION_COLUMN);
+    if(versionColumn < 0 || e.getCreatedTime() == null) {
+      return false;
+    }
+    values[versionColumn] = BigDecimal.valueOf(e.getCreatedTime().getTime());
+    return true;
+  }
+
+  private Object[] convertFields(TableMetadata table, ChangeCaptureEvent e) {
+    if(e.getRow() != null && e.getRow().getTable() == table) {
+      return e.getRow().getValues();
+    } else if(e.getRow() != null) {
+      // Decoded against a previous schema snapshot, move the values to the current column positions
+      Object[] values = new Object[table.size()];
+      TableMetadata decodedTable = e.getRow().getTable();
+      for(int i = 0; i < decodedTable.size(); i++) {
+        int column = table.indexOf(decodedTable.getColumn(i).getColumnName());
+        if(column >= 0) {
+          values[column] = e.getRow().getValues()[i];
+        }
       }
+      return values;
     }
+    Map<String,Object> convertedPayload = new HashMap<>();
+    e.getFullPayload().keySet().forEach(objectName ->
+        convertedPayload.put(mapObjectNameToOdsColumnName(objectName), e.getFullPayload().get(objectName)));
+    Object[] values = new Object[table.size()];
+    for(int i = 0; i < values.length; i++) {
+      values[i] = table.getColumn(i).getColumnType().convert(convertedPayload.get(table.getColumn(i).getColumnName()));
+    }
+    return values;
+  }
+
+  BitSet boundColumns(TableMetadata table, StatementType type, Object[] values) {
+    BitSet boundColumns = new BitSet(values.length);
+    for(int i = 0; i < values.length; i++) {
+      if(values[i] != null) {
+        boundColumns.set(i);
+      }
+    }
+    if(type == StatementType.MERGE && table.indexOf(ID_COLUMN) >= 0) {
+      boundColumns.clear(table.indexOf(ID_COLUMN));
+    }
+    return boundColumns;
+  }
 
+  private BitSet allColumns(TableMetadata table) {
+    BitSet allColumns = new BitSet(table.size());
+    allColumns.set(0, table.size());
+    return allColumns;
+  }
+
+  private void bindValue(PreparedStatement ps, int paramIndex, ColumnType columnType, Object value) throws SQLException {
+    if(value == null) {
+      ps.setNull(paramIndex, sqlType(columnType));
+      return;
+    }
+    switch(columnType) {
+      case NUMBER:
+        ps.setBigDecimal(paramIndex, (BigDecimal)value);
+        break;
+      case TIMESTAMP:
+        ps.setTimestamp(paramIndex, (Timestamp)value);
+        break;
+      case DATE:
+        ps.setDate(paramIndex, (Date)value);
+        break;
+      case CLOB:
+        // Long text is sent in chunks rather than materialized as a temporary LOB by the driver
+        if(value instanceof String && ((String)value).length() > clobStreamThreshold) {
+          ps.setCharacterStream(paramIndex, new StringReader((String)value), ((String)value).length());
+        } else {
+          ps.setObject(paramIndex, value);
+        }
+        break;
+      default:
+        ps.setObject(paramIndex, value);
+    }
+  }
+  private int sqlType(ColumnType columnType) {
+    switch(columnType) {
+      case NUMBER:
+        return Types.NUMERIC;
+      case TIMESTAMP:
+        return Types.TIMESTAMP;
+      case DATE:
+        return Types.DATE;
+      case CLOB:
+        return Types.CLOB;
+      default:
+        return Types.VARCHAR;
+    }
   }
 
 }
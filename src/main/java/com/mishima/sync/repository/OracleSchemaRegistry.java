@@ -0,0 +1,197 @@
+package com.mishima.sync.repository;
+
+import com.mishima.sync.model.ColumnMetadata;
+import com.mishima.sync.model.ColumnType;
+import com.mishima.sync.model.TableMetadata;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds the ODS column metadata as an immutable snapshot that is swapped atomically when the data
+ * dictionary is reloaded. Readers never lock. The snapshot is refreshed on a schedule and on demand
+ * when an unknown table or column is seen, at most once per minimum refresh interval. Its version
+ * only changes when a table was added, dropped or had its columns changed.
+ */
+@Component
+@Profile("!test")
+@Slf4j
+public class OracleSchemaRegistry {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Value("${spring.datasource.username}")
+  private String odsSchemaName;
+
+  @Value("${sync.schema.min-refresh-interval-ms:60000}")
+  private long minRefreshIntervalMillis;
+
+  private final AtomicReference<SchemaSnapshot> snapshot =
+      new AtomicReference<>(new SchemaSnapshot(Collections.emptyMap(), 0, 0));
+  private final AtomicLong versions = new AtomicLong();
+  private final ReentrantLock refreshLock = new ReentrantLock();
+  // Payload fields with no column that a reload has already been scheduled for, as table.column
+  private final Set<String> reportedColumns = ConcurrentHashMap.newKeySet();
+  private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+
+  @PostConstruct
+  private void init() {
+    loadSnapshot();
+  }
+
+  @PreDestroy
+  private void destroy() {
+    refreshExecutor.shutdown();
+  }
+
+  /**
+   * Returns the metadata for the table, reloading the dictionary first if the table is unknown and
+   * the minimum refresh interval has passed. Returns null if the table does not exist.
+   */
+  public TableMetadata getTable(String odsTableName) {
+    TableMetadata table = snapshot.get().tables.get(odsTableName);
+    if(table == null && isRefreshDue()) {
+      log.info("Unknown table {}, reloading schema metadata", odsTableName);
+      refreshIfDue();
+      table = snapshot.get().tables.get(odsTableName);
+    }
+    return table;
+  }
+
+  /**
+   * Returns the metadata for the table in the current snapshot without triggering a reload.
+   */
+  public TableMetadata getLoadedTable(String odsTableName) {
+    return snapshot.get().tables.get(odsTableName);
+  }
+
+  /**
+   * Schedules a background reload the first time a payload carries a field with no matching column,
+   * in case the column has been added since the snapshot was taken. Payloads routinely carry fields
+   * the ODS does not map, so each field only triggers one reload; later changes to it are picked up
+   * by the scheduled refresh.
+   */
+  public void reportUnknownColumn(String odsTableName, String columnName) {
+    String key = odsTableName + "." + columnName;
+    if(!reportedColumns.contains(key) && isRefreshDue() && reportedColumns.add(key)) {
+      log.debug("Unknown column {}, scheduling schema reload", key);
+      refreshExecutor.execute(this::refreshIfDue);
+    }
+  }
+
+  public long getVersion() {
+    return snapshot.get().version;
+  }
+
+  @Scheduled(initialDelayString = "${sync.schema.refresh-interval-ms:600000}",
+      fixedDelayString = "${sync.schema.refresh-interval-ms:600000}")
+  public void refresh() {
+    refreshLock.lock();
+    try {
+      loadSnapshot();
+    } catch(Exception ex) {
+      log.error("Error loading schema metadata, keeping previous snapshot -> {}", ex.getMessage());
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private void loadSnapshot() {
+    SchemaSnapshot current = snapshot.get();
+    Map<String, TableMetadata> tables = loadTables(current);
+    // Unchanged tables keep their instance, so the same instances under the same names mean nothing changed
+    boolean changed = tables.size() != current.tables.size()
+        || tables.entrySet().stream().anyMatch(entry -> current.tables.get(entry.getKey()) != entry.getValue());
+    snapshot.set(new SchemaSnapshot(Collections.unmodifiableMap(tables),
+        changed? versions.incrementAndGet(): current.version, System.currentTimeMillis()));
+    log.info("Loaded column metadata for {} tables{}", tables.size(), changed? "": ", unchanged");
+  }
+
+  private void refreshIfDue() {
+    if(refreshLock.tryLock()) {
+      try {
+        if(isRefreshDue()) {
+          refresh();
+        }
+      } finally {
+        refreshLock.unlock();
+      }
+    }
+  }
+
+  private boolean isRefreshDue() {
+    return System.currentTimeMillis() - snapshot.get().loadedAt >= minRefreshIntervalMillis;
+  }
+
+  private Map<String, TableMetadata> loadTables(SchemaSnapshot current) {
+    log.info("Initializing schema mapping");
+    @SuppressWarnings("unchecked")
+    List<Object[]> results = entityManager.createNativeQuery("SELECT\n"
+        + "LOWER(t.table_name) tableName,\n"
+        + "LOWER(c.column_name) columnName,\n"
+        + "LOWER(c.data_type) dataType\n"
+        + "FROM\n"
+        + "all_tables t,\n"
+        + "all_tab_cols c\n"
+        + "WHERE t.owner = :schemaOwner\n"
+        + "AND t.table_name = c.table_name\n")
+        .setParameter("schemaOwner", odsSchemaName)
+        .getResultList();
+    Map<String, SortedSet<ColumnMetadata>> columnsByTable = new HashMap<>();
+    results.forEach(objects -> {
+      String tableName = (String)objects[0];
+      String columnName = (String)objects[1];
+      String dataType = (String)objects[2];
+      if(!columnName.startsWith("_")) {
+        columnsByTable.computeIfAbsent(tableName, name -> new TreeSet<>())
+            .add(ColumnMetadata.builder().columnName(columnName).dataType(dataType)
+                .columnType(ColumnType.fromDataType(dataType)).build());
+      }
+    });
+    Map<String, TableMetadata> tables = new HashMap<>();
+    columnsByTable.forEach((tableName, columns) -> {
+      // Unchanged tables keep their metadata instance so cached statement plans stay valid
+      TableMetadata existing = current.tables.get(tableName);
+      if(existing != null && existing.getColumns().equals(List.copyOf(columns))) {
+        tables.put(tableName, existing);
+      } else {
+        if(existing != null) {
+          log.info("Columns of table {} changed", tableName);
+        }
+        tables.put(tableName, new TableMetadata(tableName, columns));
+      }
+    });
+    return tables;
+  }
+
+  @AllArgsConstructor
+  private static class SchemaSnapshot {
+
+    private final Map<String, TableMetadata> tables;
+    private final long version;
+    private final long loadedAt;
+
+  }
+
+}
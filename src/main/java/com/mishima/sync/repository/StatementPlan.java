@@ -0,0 +1,25 @@
+package com.mishima.sync.repository;
+
+import com.mishima.sync.model.ColumnType;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Precompiled SQL for a statement shape along with the column positions bound to its parameters
+ * and their types, in parameter order. When {@code bindsObjectId} is set the record id is bound after
+ * them, or before them with {@code objectIdFirst}, followed by the value of {@code versionColumn} when
+ * the statement only applies to older rows.
+ */
+@Getter
+@Builder
+class StatementPlan {
+
+  private final String sql;
+  private final int[] parameterColumns;
+  private final ColumnType[] parameterTypes;
+  private final boolean bindsObjectId;
+  private final boolean objectIdFirst;
+  @Builder.Default
+  private final int versionColumn = -1;
+
+}
@@ -0,0 +1,25 @@
+package com.mishima.sync.repository;
+
+import com.mishima.sync.model.TableMetadata;
+import java.util.BitSet;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * Identifies the shape of a generated statement: the target table, the kind of statement, the set
+ * of columns that carry a bound value and, for delta updates, the set of columns explicitly set to
+ * null. The bit sets must not be modified once used as a key.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+class StatementPlanKey {
+
+  // Compared by identity, a reloaded table with different columns gets a new metadata instance
+  private final TableMetadata table;
+  private final StatementType type;
+  private final BitSet boundColumns;
+  private final BitSet nullColumns;
+
+}
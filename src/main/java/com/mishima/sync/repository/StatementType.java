@@ -0,0 +1,9 @@
+package com.mishima.sync.repository;
+
+enum StatementType {
+  INSERT,
+  UPDATE,
+  DELTA_UPDATE,
+  MERGE,
+  DELETE
+}
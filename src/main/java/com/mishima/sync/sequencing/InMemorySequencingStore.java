@@ -0,0 +1,66 @@
+package com.mishima.sync.sequencing;
+
+import com.mishima.sync.cache.ExpiringCache;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sequencing store held in process, bounded in size and age. State is lost on restart and not
+ * shared, so it only suits a single consumer instance. Changes to a record are applied by one
+ * partition at a time, so read-then-write updates of an entry never race.
+ */
+@Component
+@ConditionalOnProperty(name = "sync.sequencing.store", havingValue = "memory", matchIfMissing = true)
+@Slf4j
+public class InMemorySequencingStore implements SequencingStore {
+
+  private final ExpiringCache<String, RecordState> states;
+
+  public InMemorySequencingStore(@Value("${sync.sequencing.max-size:100000}") long maxSize,
+      @Value("${sync.sequencing.ttl-minutes:1440}") long ttlMinutes) {
+    this.states = new ExpiringCache<>("sequencing", maxSize, TimeUnit.MINUTES.toMillis(ttlMinutes));
+  }
+
+  @Override
+  public Map<String, RecordState> getStates(Collection<String> objectIds) {
+    Map<String, RecordState> result = new HashMap<>();
+    for(String objectId: objectIds) {
+      RecordState state = states.get(objectId);
+      if(state != null) {
+        result.put(objectId, state);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void recordDeleted(String objectId, long version) {
+    record(new RecordState(objectId, version, true));
+  }
+
+  @Override
+  public void recordApplied(String objectId, long version) {
+    record(new RecordState(objectId, version, false));
+  }
+
+  private void record(RecordState state) {
+    RecordState latest = RecordState.latest(states.get(state.getObjectId()), state);
+    if(latest == state) {
+      states.put(state.getObjectId(), state);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${sync.cache.stats-interval-ms:300000}")
+  public void logCacheStatistics() {
+    log.info("Cache {}: size {}, hits {}, misses {}, evictions {}", states.getName(), states.size(),
+        states.getHits(), states.getMisses(), states.getEvictions());
+  }
+
+}
@@ -0,0 +1,171 @@
+package com.mishima.sync.sequencing;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sequencing store kept in an Oracle table, shared by every consumer instance and surviving
+ * restarts. Tombstones are written as they happen while applied versions are collected and
+ * written behind in batches; lookups overlay the versions not yet written. The table is created
+ * with:
+ *
+ * <pre>
+ * CREATE TABLE SYNC_RECORD_STATE
+ * (
+ *   OBJECT_ID VARCHAR2(18 BYTE),
+ *   VERSION NUMBER(19) NOT NULL,
+ *   DELETED NUMBER(1) NOT NULL,
+ *   UPDATED_AT TIMESTAMP(6) NOT NULL,
+ *   PRIMARY KEY(OBJECT_ID)
+ * );
+ * </pre>
+ */
+@Component
+@Transactional
+@Profile("!test")
+@ConditionalOnProperty(name = "sync.sequencing.store", havingValue = "oracle")
+@Slf4j
+public class OracleSequencingStore implements SequencingStore {
+
+  // Oracle allows at most 1000 expressions in an IN list
+  private static final int[] LOOKUP_SIZES = {1, 10, 100, 1000};
+
+  private static final String MERGE_SQL = "MERGE INTO sync_record_state s"
+      + " USING (SELECT ? object_id, ? version, ? deleted FROM dual) n ON (s.object_id = n.object_id)"
+      + " WHEN MATCHED THEN UPDATE SET s.version = n.version, s.deleted = n.deleted, s.updated_at = ?"
+      + " WHERE n.version > s.version OR (n.version = s.version AND n.deleted > s.deleted)"
+      + " WHEN NOT MATCHED THEN INSERT (object_id, version, deleted, updated_at) VALUES (n.object_id, n.version, n.deleted, ?)";
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Value("${sync.sequencing.ttl-minutes:1440}")
+  private long ttlMinutes;
+
+  // Applied versions waiting to be written
+  private final Map<String, RecordState> pending = new ConcurrentHashMap<>();
+
+  @Override
+  public Map<String, RecordState> getStates(Collection<String> objectIds) {
+    List<String> ids = new ArrayList<>(objectIds);
+    Map<String, RecordState> result = new HashMap<>();
+    int offset = 0;
+    while(offset < ids.size()) {
+      int size = lookupSize(ids.size() - offset);
+      result.putAll(select(ids, offset, size));
+      offset += size;
+    }
+    for(String objectId: objectIds) {
+      RecordState unwritten = pending.get(objectId);
+      if(unwritten != null) {
+        result.merge(objectId, unwritten, RecordState::latest);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void recordDeleted(String objectId, long version) {
+    RecordState state = new RecordState(objectId, version, true);
+    merge(List.of(state));
+    pending.computeIfPresent(objectId, (id, unwritten) -> RecordState.latest(unwritten, state) == state? null: unwritten);
+  }
+
+  @Override
+  public void recordApplied(String objectId, long version) {
+    pending.merge(objectId, new RecordState(objectId, version, false), RecordState::latest);
+  }
+
+  @Scheduled(fixedDelayString = "${sync.sequencing.flush-interval-ms:500}")
+  public void flush() {
+    if(pending.isEmpty()) {
+      return;
+    }
+    List<RecordState> states = new ArrayList<>(pending.values());
+    merge(states);
+    // Keep any entry replaced by a later version while the batch was written
+    states.forEach(state -> pending.remove(state.getObjectId(), state));
+    log.debug("Wrote {} applied versions", states.size());
+  }
+
+  @Scheduled(fixedDelayString = "${sync.sequencing.purge-interval-ms:3600000}")
+  public void purge() {
+    Timestamp cutoff = new Timestamp(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ttlMinutes));
+    int purged = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+      try(PreparedStatement ps = connection.prepareStatement("DELETE FROM sync_record_state WHERE updated_at < ?")) {
+        ps.setTimestamp(1, cutoff);
+        return ps.executeUpdate();
+      }
+    });
+    log.info("Purged {} record states last updated before {}", purged, cutoff);
+  }
+
+  // Lookups are padded to a few fixed sizes so the driver's statement cache holds four statements at most
+  private Map<String, RecordState> select(List<String> ids, int offset, int size) {
+    StringBuilder sql = new StringBuilder("SELECT object_id, version, deleted FROM sync_record_state WHERE object_id IN (");
+    for(int i = 0; i < size; i++) {
+      sql.append(i == 0? "?": ", ?");
+    }
+    sql.append(")");
+    return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+      Map<String, RecordState> states = new HashMap<>();
+      try(PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+        int last = Math.min(ids.size(), offset + size) - 1;
+        for(int i = 0; i < size; i++) {
+          ps.setString(i + 1, ids.get(Math.min(offset + i, last)));
+        }
+        try(ResultSet rs = ps.executeQuery()) {
+          while(rs.next()) {
+            states.put(rs.getString(1), new RecordState(rs.getString(1), rs.getLong(2), rs.getInt(3) == 1));
+          }
+        }
+      }
+      return states;
+    });
+  }
+
+  private void merge(List<RecordState> states) {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    entityManager.unwrap(Session.class).doWork(connection -> {
+      try(PreparedStatement ps = connection.prepareStatement(MERGE_SQL)) {
+        for(RecordState state: states) {
+          ps.setString(1, state.getObjectId());
+          ps.setLong(2, state.getVersion());
+          ps.setInt(3, state.isDeleted()? 1: 0);
+          ps.setTimestamp(4, now);
+          ps.setTimestamp(5, now);
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+    });
+  }
+
+  private static int lookupSize(int remaining) {
+    for(int size: LOOKUP_SIZES) {
+      if(remaining <= size) {
+        return size;
+      }
+    }
+    return LOOKUP_SIZES[LOOKUP_SIZES.length - 1];
+  }
+
+}
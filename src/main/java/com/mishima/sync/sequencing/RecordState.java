@@ -0,0 +1,36 @@
+package com.mishima.sync.sequencing;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Ordering state of a single record: the version of the last change applied to it and whether that
+ * change deleted it. Versions are the Salesforce change times in epoch milliseconds.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class RecordState {
+
+  private final String objectId;
+  private final long version;
+  private final boolean deleted;
+
+  /**
+   * Returns whichever state is later, a delete winning over another change at the same version.
+   */
+  public static RecordState latest(RecordState a, RecordState b) {
+    if(a == null) {
+      return b;
+    } else if(b == null) {
+      return a;
+    } else if(a.version != b.version) {
+      return a.version > b.version? a: b;
+    }
+    return b.deleted? b: a;
+  }
+
+}
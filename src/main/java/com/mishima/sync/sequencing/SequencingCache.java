@@ -0,0 +1,83 @@
+package com.mishima.sync.sequencing;
+
+import com.mishima.sync.cache.ExpiringCache;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * Near cache in front of a sequencing store. The states of every record in a batch of messages are
+ * fetched in one lookup before the batch is applied, and each write goes to both the store and the
+ * cache, so applying a change needs no lookup of its own. Fetched states are merged with cached
+ * ones rather than replacing them, as versions only ever move forward.
+ */
+public class SequencingCache {
+
+  private final SequencingStore store;
+  @Getter
+  private final ExpiringCache<String, RecordState> states;
+
+  public SequencingCache(SequencingStore store, long maxSize, long ttlMillis) {
+    this.store = store;
+    this.states = new ExpiringCache<>("sequencing-near", maxSize, ttlMillis);
+  }
+
+  public void prefetch(Collection<String> objectIds) {
+    if(objectIds.isEmpty()) {
+      return;
+    }
+    Map<String, RecordState> fetched = store.getStates(objectIds);
+    for(String objectId: objectIds) {
+      RecordState state = fetched.get(objectId);
+      cache(state != null? state: absent(objectId));
+    }
+  }
+
+  /**
+   * Returns the state of the record, or null if it has none. Records not prefetched, or expired
+   * from the cache since, are looked up individually.
+   */
+  public RecordState get(String objectId) {
+    RecordState state = states.get(objectId);
+    if(state == null) {
+      prefetch(List.of(objectId));
+      state = states.get(objectId);
+    }
+    return state == null || isAbsent(state)? null: state;
+  }
+
+  public void recordDeleted(String objectId, long version) {
+    store.recordDeleted(objectId, version);
+    cache(new RecordState(objectId, version, true));
+  }
+
+  public void recordApplied(String objectId, long version) {
+    store.recordApplied(objectId, version);
+    cache(new RecordState(objectId, version, false));
+  }
+
+  /**
+   * Drops the cached state of the record, so the next lookup goes to the store. Used when a write
+   * recorded here is rolled back.
+   */
+  public void invalidate(String objectId) {
+    states.remove(objectId);
+  }
+
+  // Synchronized so a fetched state merged by the dispatcher cannot overwrite a later write by a partition
+  private synchronized void cache(RecordState state) {
+    RecordState cached = states.get(state.getObjectId());
+    states.put(state.getObjectId(), RecordState.latest(cached, state));
+  }
+
+  // Records known to have no state are cached too, at a version every real state is later than
+  private static RecordState absent(String objectId) {
+    return new RecordState(objectId, Long.MIN_VALUE, false);
+  }
+
+  private static boolean isAbsent(RecordState state) {
+    return state.getVersion() == Long.MIN_VALUE;
+  }
+
+}
@@ -0,0 +1,31 @@
+package com.mishima.sync.sequencing;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Tombstones and last applied versions of records, consulted before applying a change so that
+ * stale and replayed changes never overwrite newer data or resurrect a deleted record. Stores
+ * shared between instances let several consumers work through the same queue.
+ */
+public interface SequencingStore {
+
+  /**
+   * Returns the known state of each of the given records in a single lookup. Records without
+   * state are left out of the result.
+   */
+  Map<String, RecordState> getStates(Collection<String> objectIds);
+
+  /**
+   * Records a delete. The tombstone is durable once this returns, so the message carrying the
+   * delete can be acknowledged.
+   */
+  void recordDeleted(String objectId, long version);
+
+  /**
+   * Records the version of a change applied to a record. Stores may write these behind, as the
+   * versions only serve to drop stale changes early.
+   */
+  void recordApplied(String objectId, long version);
+
+}
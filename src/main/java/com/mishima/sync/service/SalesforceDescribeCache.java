@@ -0,0 +1,56 @@
+package com.mishima.sync.service;
+
+import com.mishima.sync.cache.ExpiringCache;
+import com.mishima.sync.model.SalesforceObjectDescribe;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Describes already fetched from Salesforce along with the Last-Modified time they were returned
+ * with. A cached describe is revalidated with If-Modified-Since rather than fetched again, so
+ * unchanged objects cost a 304 with no body. Field-level security makes a describe specific to the
+ * user it was fetched as, so describes are cached per user.
+ */
+@Component
+public class SalesforceDescribeCache {
+
+  private final ExpiringCache<String, CachedDescribe> describes;
+
+  public SalesforceDescribeCache(@Value("${salesforce.describe-cache.max-size:2000}") long maxSize,
+      @Value("${salesforce.describe-cache.ttl-minutes:1440}") long ttlMinutes) {
+    this.describes = new ExpiringCache<>("describes", maxSize, ttlMinutes * 60000L);
+  }
+
+  public CachedDescribe get(String baseUri, String username, String objectName) {
+    return describes.get(key(baseUri, username, objectName));
+  }
+
+  public void put(String baseUri, String username, String objectName, CachedDescribe describe) {
+    describes.put(key(baseUri, username, objectName), describe);
+  }
+
+  public long getHits() {
+    return describes.getHits();
+  }
+
+  public long getMisses() {
+    return describes.getMisses();
+  }
+
+  private static String key(String baseUri, String username, String objectName) {
+    return baseUri + "|" + username + "|" + objectName.toLowerCase();
+  }
+
+  @Getter
+  @AllArgsConstructor
+  public static class CachedDescribe {
+
+    private final SalesforceObjectDescribe describe;
+    // Value of the Last-Modified header, sent back as If-Modified-Since
+    private final String lastModified;
+
+  }
+
+}
@@ -1,27 +1,82 @@
 package com.mishima.sync.service;
 
 import com.mishima.sync.model.SalesforceObjectDescribe;
+import com.mishima.sync.model.SalesforceObjectList;
+import com.mishima.sync.model.SalesforceObjectList.SalesforceObjectSummary;
+import com.mishima.sync.service.SalesforceDescribeCache.CachedDescribe;
+import java.util.List;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
 
 @Slf4j
 public class SalesforceObjectSchemaService {
 
-  private final OAuth2RestTemplate oAuth2RestTemplate;
+  private static final String SOBJECTS_PATH = "/services/data/v42.0/sobjects";
+
+  private final RestTemplate oAuth2RestTemplate;
 
   private final String salesforceQueryUri;
 
-  public SalesforceObjectSchemaService(@Autowired OAuth2RestTemplate oAuth2RestTemplate, @Value("${salesforce.query.uri}") String salesforceQueryUri) {
+  private final SalesforceDescribeCache describeCache;
+
+  // User the template authenticates as, describes are only shared between requests for the same user
+  private final String username;
+
+  public SalesforceObjectSchemaService(@Autowired RestTemplate oAuth2RestTemplate, @Value("${salesforce.query.uri}") String salesforceQueryUri) {
+    this(oAuth2RestTemplate, salesforceQueryUri, null, null);
+  }
+
+  public SalesforceObjectSchemaService(RestTemplate oAuth2RestTemplate, String salesforceQueryUri,
+      SalesforceDescribeCache describeCache, String username) {
     this.oAuth2RestTemplate = oAuth2RestTemplate;
     this.salesforceQueryUri = salesforceQueryUri;
+    this.describeCache = describeCache;
+    this.username = username;
   }
 
   public SalesforceObjectDescribe extractSchemaForObject(String objectName) {
     log.info("Retrieving schema description for objectType: {}", objectName);
-    String uri = salesforceQueryUri + "/services/data/v42.0/sobjects/" + objectName + "/describe";
-    return oAuth2RestTemplate.getForObject(uri, SalesforceObjectDescribe.class);
+    String uri = salesforceQueryUri + SOBJECTS_PATH + "/" + objectName + "/describe";
+    if(describeCache == null) {
+      return oAuth2RestTemplate.getForObject(uri, SalesforceObjectDescribe.class);
+    }
+    CachedDescribe cached = describeCache.get(salesforceQueryUri, username, objectName);
+    HttpHeaders headers = new HttpHeaders();
+    if(cached != null && cached.getLastModified() != null) {
+      headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+    }
+    ResponseEntity<SalesforceObjectDescribe> response = oAuth2RestTemplate.exchange(uri, HttpMethod.GET,
+        new HttpEntity<>(headers), SalesforceObjectDescribe.class);
+    if(response.getStatusCode() == HttpStatus.NOT_MODIFIED && cached != null) {
+      log.debug("Schema description for objectType {} not modified since {}", objectName, cached.getLastModified());
+      // Store it again so the entry lives on for as long as Salesforce keeps confirming it
+      describeCache.put(salesforceQueryUri, username, objectName, cached);
+      return cached.getDescribe();
+    }
+    describeCache.put(salesforceQueryUri, username, objectName,
+        new CachedDescribe(response.getBody(), response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED)));
+    return response.getBody();
+  }
+
+  /**
+   * Returns the names of all custom objects in the org, leaving out metadata types, platform events
+   * and other custom entities that are not records.
+   */
+  public List<String> listCustomObjects() {
+    SalesforceObjectList objects = oAuth2RestTemplate.getForObject(salesforceQueryUri + SOBJECTS_PATH, SalesforceObjectList.class);
+    return objects.getSobjects().stream()
+        .filter(SalesforceObjectSummary::isCustom)
+        .map(SalesforceObjectSummary::getName)
+        .filter(name -> name.endsWith("__c"))
+        .collect(Collectors.toList());
   }
 
 }
@@ -0,0 +1,100 @@
+package com.mishima.sync.sqs;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deletes processed messages using DeleteMessageBatch. A batch is sent as soon as ten messages are
+ * pending, or once the oldest pending message has waited for the flush interval.
+ */
+@Slf4j
+public class SqsMessageAcknowledger {
+
+  private static final int MAX_BATCH_SIZE = 10;
+
+  private final AmazonSQS amazonSQS;
+  private final String queueUrl;
+  private final long flushIntervalMillis;
+  private final BlockingQueue<Message> pending = new LinkedBlockingQueue<>();
+
+  private volatile boolean running;
+  private Thread thread;
+
+  public SqsMessageAcknowledger(AmazonSQS amazonSQS, String queueUrl, long flushIntervalMillis) {
+    this.amazonSQS = amazonSQS;
+    this.queueUrl = queueUrl;
+    this.flushIntervalMillis = flushIntervalMillis;
+  }
+
+  public void start() {
+    running = true;
+    thread = new Thread(this::run, "sqs-acknowledger");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stops the acknowledger once all pending messages have been deleted.
+   */
+  public void stop() throws InterruptedException {
+    running = false;
+    if(thread != null) {
+      thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  public void acknowledge(Message message) {
+    pending.add(message);
+  }
+
+  private void run() {
+    while(running || !pending.isEmpty()) {
+      try {
+        Message first = pending.poll(1, TimeUnit.SECONDS);
+        if(first == null) {
+          continue;
+        }
+        List<Message> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        batch.add(first);
+        long deadline = System.currentTimeMillis() + flushIntervalMillis;
+        while(batch.size() < MAX_BATCH_SIZE) {
+          Message next = pending.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+          if(next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        delete(batch);
+      } catch(InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch(Exception ex) {
+        log.error("Error deleting messages from {} -> {}", queueUrl, ex.getMessage());
+      }
+    }
+  }
+
+  private void delete(List<Message> batch) {
+    List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(batch.size());
+    for(int i = 0; i < batch.size(); i++) {
+      entries.add(new DeleteMessageBatchRequestEntry(String.valueOf(i), batch.get(i).getReceiptHandle()));
+    }
+    DeleteMessageBatchResult result = amazonSQS.deleteMessageBatch(new DeleteMessageBatchRequest(queueUrl, entries));
+    for(BatchResultErrorEntry error: result.getFailed()) {
+      Message message = batch.get(Integer.parseInt(error.getId()));
+      log.warn("Could not delete message id {} -> {}", message.getMessageId(), error.getMessage());
+    }
+    log.info("Deleted {} processed messages", batch.size() - result.getFailed().size());
+  }
+
+}
@@ -0,0 +1,108 @@
+package com.mishima.sync.sqs;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.mishima.sync.metrics.SyncMetrics;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps a number of long-poll receives of up to ten messages in flight and hands the received
+ * messages to the consumer through a bounded buffer. Receivers block while the buffer is full so
+ * messages are never fetched faster than they are processed. A throttle, when set, idles the
+ * receivers beyond its share of them so fewer receives are made while processing is held back.
+ */
+@Slf4j
+public class SqsMessagePrefetcher {
+
+  private static final int MAX_MESSAGES_PER_RECEIVE = 10;
+  private static final int WAIT_TIME_SECONDS = 10;
+  private static final long THROTTLED_PAUSE_MILLIS = 200;
+
+  private final AmazonSQS amazonSQS;
+  private final String queueUrl;
+  private final int receiverCount;
+  private final BlockingQueue<Message> buffer;
+  private final SyncMetrics syncMetrics;
+
+  private volatile boolean running;
+  // Share of the receivers to keep receiving, at least one always is
+  private volatile DoubleSupplier throttle = () -> 1.0;
+
+  public SqsMessagePrefetcher(AmazonSQS amazonSQS, String queueUrl, int receiverCount, int bufferCapacity,
+      SyncMetrics syncMetrics) {
+    this.amazonSQS = amazonSQS;
+    this.queueUrl = queueUrl;
+    this.receiverCount = receiverCount;
+    this.buffer = new ArrayBlockingQueue<>(Math.max(bufferCapacity, MAX_MESSAGES_PER_RECEIVE));
+    this.syncMetrics = syncMetrics;
+  }
+
+  public void start() {
+    running = true;
+    ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(queueUrl)
+        .withWaitTimeSeconds(WAIT_TIME_SECONDS)
+        .withMaxNumberOfMessages(MAX_MESSAGES_PER_RECEIVE)
+        // The content type and encoding of compressed bodies are sent as message attributes
+        .withMessageAttributeNames("All");
+    for(int i = 0; i < receiverCount; i++) {
+      int receiver = i;
+      Thread thread = new Thread(() -> receive(receiver, receiveMessageRequest), "sqs-receiver-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+    log.info("Started {} receivers for queue {}", receiverCount, queueUrl);
+  }
+
+  public void stop() {
+    running = false;
+  }
+
+  public void setThrottle(DoubleSupplier throttle) {
+    this.throttle = throttle;
+  }
+
+  /**
+   * Returns the next prefetched message, or null if none arrived within the timeout.
+   */
+  public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+    return buffer.poll(timeout, unit);
+  }
+
+  /**
+   * Moves up to the given number of already prefetched messages to the list without waiting.
+   */
+  public int drainTo(List<Message> messages, int maxMessages) {
+    return buffer.drainTo(messages, maxMessages);
+  }
+
+  private void receive(int receiver, ReceiveMessageRequest receiveMessageRequest) {
+    while(running) {
+      try {
+        if(receiver >= Math.max(1, Math.ceil(receiverCount * throttle.getAsDouble()))) {
+          Thread.sleep(THROTTLED_PAUSE_MILLIS);
+          continue;
+        }
+        long start = System.nanoTime();
+        List<Message> messages = amazonSQS.receiveMessage(receiveMessageRequest).getMessages();
+        syncMetrics.recordReceive(System.nanoTime() - start, messages.size());
+        for(Message message: messages) {
+          buffer.put(message);
+        }
+      } catch(InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch(Exception ex) {
+        if(running) {
+          log.error("Error receiving messages from {} -> {}", queueUrl, ex.getMessage());
+        }
+      }
+    }
+  }
+
+}
@@ -1,25 +1,45 @@
 package com.mishima.sync.startup;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.Message;
-import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.mishima.sync.cache.ExpiringCache;
+import com.mishima.sync.codec.ChangeCaptureEventDecoder;
 import com.mishima.sync.exception.MessageParseException;
 import com.mishima.sync.exception.MessageSequencingException;
+import com.mishima.sync.initialload.InitialLoadStartup;
+import com.mishima.sync.journal.Journal;
+import com.mishima.sync.journal.JournalApplier;
+import com.mishima.sync.journal.JournaledMessage;
+import com.mishima.sync.metrics.SyncMetrics;
 import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.processor.AdaptiveLimiter;
+import com.mishima.sync.processor.DeadLetterSink;
+import com.mishima.sync.processor.EventCoalescer;
+import com.mishima.sync.processor.PartitionedExecutor;
+import com.mishima.sync.processor.RetryScheduler;
 import com.mishima.sync.repository.OracleRepository;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
+import com.mishima.sync.sequencing.RecordState;
+import com.mishima.sync.sequencing.SequencingCache;
+import com.mishima.sync.sequencing.SequencingStore;
+import com.mishima.sync.sqs.SqsMessageAcknowledger;
+import com.mishima.sync.sqs.SqsMessagePrefetcher;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.persistence.PersistenceException;
 import lombok.extern.slf4j.Slf4j;
@@ -29,66 +49,232 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Profile;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Component
 @Profile("cloud")
+@Order(InitialLoadStartup.ORDER + 1)
 @Slf4j
 public class EventConsumerStartup implements ApplicationRunner {
 
-  // Maximum number of retries for an update before giving up
-  private static final int UPDATE_RETRY_ATTEMPTS = 3;
+  // Longest visibility timeout SQS accepts, in seconds
+  private static final int MAX_VISIBILITY_TIMEOUT_SECONDS = 43200;
 
   @Value("${sqs.url}")
   private String sqsUrl;
 
+  // Apply creates and updates as a single MERGE instead of insert-then-update on duplicate key
+  @Value("${sync.oracle.upsert:false}")
+  private boolean upsertEnabled;
+
+  // Apply updates guarded by the row's version, so updates behind a newer change are ignored, and upsert
+  // updates ahead of their record instead of retrying them
+  @Value("${sync.oracle.versioned-writes:false}")
+  private boolean versionedWritesEnabled;
+
+  // Number of Oracle writer partitions, events for the same record always share a partition
+  @Value("${sync.consumer.partitions:4}")
+  private int partitionCount;
+
+  @Value("${sync.consumer.partition-queue-capacity:500}")
+  private int partitionQueueCapacity;
+
+  // Rows committed together across messages by each partition, and the longest a group stays open; 1 commits every task alone
+  @Value("${sync.consumer.group-commit-max-rows:1}")
+  private int groupCommitMaxRows;
+
+  @Value("${sync.consumer.group-commit-max-delay-ms:20}")
+  private long groupCommitMaxDelayMillis;
+
+  // Window over which bursts of changes to the same record are folded together, 0 disables coalescing
+  @Value("${sync.consumer.coalesce-window-ms:0}")
+  private long coalesceWindowMillis;
+
+  // Records buffered by the coalescer before it flushes early, holding up receipt while Oracle is slow
+  @Value("${sync.consumer.coalesce-max-records:1000}")
+  private int coalesceMaxRecords;
+
+  // Number of long-poll receives kept in flight and the number of messages buffered ahead of processing
+  @Value("${sync.sqs.receivers:2}")
+  private int receiverCount;
+
+  @Value("${sync.sqs.prefetch-buffer:50}")
+  private int prefetchBufferCapacity;
+
+  @Value("${sync.sqs.delete-flush-interval-ms:200}")
+  private long deleteFlushIntervalMillis;
+
+  // Sequencing states fetched for a batch of messages are kept near the partitions for this long
+  @Value("${sync.sequencing.near-cache-max-size:100000}")
+  private long sequencingCacheMaxSize;
+
+  @Value("${sync.sequencing.near-cache-ttl-ms:60000}")
+  private long sequencingCacheTtlMillis;
+
+  // Updates that arrive ahead of their record are retried in-process with exponential backoff
+  @Value("${sync.retry.max-attempts:5}")
+  private int retryMaxAttempts;
+
+  @Value("${sync.retry.base-delay-ms:250}")
+  private long retryBaseDelayMillis;
+
+  @Value("${sync.retry.max-delay-ms:30000}")
+  private long retryMaxDelayMillis;
+
+  // Added to the retry delay when extending the visibility of a message with pending retries
+  @Value("${sync.retry.visibility-margin-seconds:30}")
+  private int retryVisibilityMarginSeconds;
+
+  @Value("${sync.retry.dead-letter-file:dead-letter.jsonl}")
+  private String deadLetterFile;
+
+  // Journal received messages to local disk and delete them from the queue once synced, applying them from the journal
+  @Value("${sync.journal.enabled:false}")
+  private boolean journalEnabled;
+
+  @Value("${sync.journal.directory:journal}")
+  private String journalDirectory;
+
+  @Value("${sync.journal.segment-size-mb:64}")
+  private int journalSegmentSizeMb;
+
+  // Receiving pauses while the journal holds more segments than this
+  @Value("${sync.journal.max-segments:64}")
+  private int journalMaxSegments;
+
+  @Value("${sync.journal.max-in-flight:500}")
+  private int journalMaxInFlight;
+
+  @Value("${sync.journal.checkpoint-interval-ms:1000}")
+  private long journalCheckpointIntervalMillis;
+
+  // Journaled messages still failing after this many attempts are dead lettered so the checkpoint can move on
+  @Value("${sync.journal.max-attempts:100}")
+  private int journalMaxAttempts;
+
   @Autowired
   private AmazonSQS amazonSQS;
 
   @Autowired
   private OracleRepository oracleRepository;
 
-  private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+  @Autowired
+  private ChangeCaptureEventDecoder changeCaptureEventDecoder;
 
-  private final Gson gson = new Gson();
-  private final Type listType = new TypeToken<ArrayList<ChangeCaptureEvent>>(){}.getType();
+  @Autowired
+  private SyncMetrics syncMetrics;
 
-  private final Map<String,Integer> updateRetryMessagesCache = new HashMap<>();
-  private final Set<String> deletedItemsCache = new HashSet<>();
+  @Autowired
+  private SequencingStore sequencingStore;
 
-  private boolean runnable = true;
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private AdaptiveLimiter adaptiveLimiter;
+
+  private SequencingCache sequencingCache;
+
+  private PartitionedExecutor partitionedExecutor;
+  private EventCoalescer<Message> eventCoalescer;
+  private RetryScheduler retryScheduler;
+  private DeadLetterSink deadLetterSink;
+  private SqsMessagePrefetcher messagePrefetcher;
+  private SqsMessageAcknowledger messageAcknowledger;
+  private Journal journal;
+  private JournalApplier journalApplier;
+  private RetryScheduler journalRetryScheduler;
+
+  private volatile boolean runnable = true;
+
+  @PostConstruct
+  private void init() throws IOException {
+    sequencingCache = new SequencingCache(sequencingStore, sequencingCacheMaxSize, sequencingCacheTtlMillis);
+    deadLetterSink = new DeadLetterSink(Paths.get(deadLetterFile));
+  }
 
   @PreDestroy
-  private void destroy() {
+  private void destroy() throws InterruptedException, IOException {
     log.info("Shutting down");
-    amazonSQS.shutdown();
     runnable = false;
+    if(messagePrefetcher != null) {
+      messagePrefetcher.stop();
+    }
+    if(eventCoalescer != null) {
+      eventCoalescer.stop();
+    }
+    if(retryScheduler != null) {
+      retryScheduler.stop();
+    }
+    if(journalApplier != null) {
+      journalRetryScheduler.stop();
+      journalApplier.stop();
+    }
+    if(partitionedExecutor != null) {
+      partitionedExecutor.shutdown();
+    }
+    if(messageAcknowledger != null) {
+      messageAcknowledger.stop();
+    }
+    if(journal != null) {
+      journal.close();
+    }
+    deadLetterSink.close();
+    amazonSQS.shutdown();
   }
 
   @Override
-  public void run(ApplicationArguments args) {
+  public void run(ApplicationArguments args) throws IOException {
 
-    ReceiveMessageRequest receiveMessageRequest = new ReceiveMessageRequest(sqsUrl)
-        .withWaitTimeSeconds(10)
-        .withMaxNumberOfMessages(1);
+    partitionedExecutor = new PartitionedExecutor("oracle-writer", partitionCount, partitionQueueCapacity,
+        new TransactionTemplate(transactionManager), groupCommitMaxRows, groupCommitMaxDelayMillis, adaptiveLimiter);
+    retryScheduler = new RetryScheduler("update-retry", retryBaseDelayMillis, retryMaxDelayMillis, retryMaxAttempts);
+    retryScheduler.start();
+    if(coalesceWindowMillis > 0) {
+      eventCoalescer = new EventCoalescer<>(coalesceWindowMillis, coalesceMaxRecords, this::submitEvent);
+      eventCoalescer.start();
+      registerCoalescerMetrics();
+    }
+    messageAcknowledger = new SqsMessageAcknowledger(amazonSQS, sqsUrl, deleteFlushIntervalMillis);
+    messageAcknowledger.start();
+    messagePrefetcher = new SqsMessagePrefetcher(amazonSQS, sqsUrl, receiverCount, prefetchBufferCapacity, syncMetrics);
+    if(!journalEnabled) {
+      // Receive less while Oracle writes are backed off, a journal instead absorbs the backlog on disk
+      messagePrefetcher.setThrottle(adaptiveLimiter::getThrottle);
+    }
+    messagePrefetcher.start();
+    if(journalEnabled) {
+      journal = new Journal(Paths.get(journalDirectory), journalSegmentSizeMb << 20);
+      journalRetryScheduler = new RetryScheduler("journal-retry", retryBaseDelayMillis, retryMaxDelayMillis, journalMaxAttempts);
+      journalRetryScheduler.start();
+      journalApplier = new JournalApplier(journal, this::applyJournaled, this::deadLetterJournaled, prefetchBufferCapacity,
+          journalMaxInFlight, journalRetryScheduler, journalCheckpointIntervalMillis);
+      journalApplier.start();
+    }
 
     new Thread(() -> {
       while(runnable) {
         try {
-          amazonSQS.receiveMessage(receiveMessageRequest).getMessages().forEach(message -> {
-            log.info("Received message id {}", message.getMessageId());
-            try {
-              List<ChangeCaptureEvent> changeCaptureEvents = deserialize(message);
-              if (isBatchUpdate(changeCaptureEvents)) {
-                processInBulk(message, changeCaptureEvents);
-              } else {
-                processIndividually(message, changeCaptureEvents);
-              }
-            } catch( MessageParseException ex ) {
-              log.error("Error parsing message: {} -> {}", message.getBody(), ex.getMessage());
+          Message message = messagePrefetcher.poll(1, TimeUnit.SECONDS);
+          if(message != null) {
+            List<Message> messages = new ArrayList<>();
+            messages.add(message);
+            messagePrefetcher.drainTo(messages, prefetchBufferCapacity);
+            if(journal != null) {
+              journal(messages);
+            } else {
+              dispatch(messages);
             }
-            deleteMessage(message);
-          });
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return;
         } catch (Exception ex) {
           ex.printStackTrace();
         }
@@ -96,46 +282,316 @@ public class EventConsumerStartup implements ApplicationRunner {
     }).start();
   }
 
+  /**
+   * Applies a batch of messages and deletes each from the queue once its events are applied.
+   */
+  private void dispatch(List<Message> messages) throws InterruptedException {
+    List<CompletableFuture<Void>> applied = apply(messages);
+    for(int i = 0; i < messages.size(); i++) {
+      Message message = messages.get(i);
+      applied.get(i).whenComplete((result, ex) -> {
+        if(ex == null) {
+          deleteMessage(message);
+        } else {
+          log.error("Error processing message id {}, leaving it for redelivery -> {}", message.getMessageId(), ex.getMessage());
+        }
+      });
+    }
+  }
+
+  /**
+   * Appends a batch of messages to the journal and deletes them from the queue once the journal is
+   * synced, leaving them to the journal applier. A message the journal cannot take is applied
+   * directly instead.
+   */
+  private void journal(List<Message> messages) throws InterruptedException, IOException {
+    while(journal.getSegmentCount() > journalMaxSegments && runnable) {
+      log.warn("Journal holds {} segments, pausing until the applier catches up", journal.getSegmentCount());
+      Thread.sleep(1000);
+    }
+    List<Message> journaled = new ArrayList<>();
+    List<Message> direct = new ArrayList<>();
+    for(Message message: messages) {
+      try {
+        journal.append(JournaledMessage.encode(message));
+        journaled.add(message);
+      } catch(IOException ex) {
+        log.warn("Could not journal message id {}, applying it directly -> {}", message.getMessageId(), ex.getMessage());
+        direct.add(message);
+      }
+    }
+    journal.sync();
+    journaled.forEach(this::deleteMessage);
+    if(!direct.isEmpty()) {
+      dispatch(direct);
+    }
+  }
+
+  private List<CompletableFuture<Void>> applyJournaled(List<byte[]> records) {
+    List<Message> messages = new ArrayList<>();
+    for(byte[] record: records) {
+      try {
+        messages.add(JournaledMessage.decode(record));
+      } catch(IOException ex) {
+        // Records are checksummed, so this is a record that can never be read rather than a torn one
+        log.error("Could not read journaled message, skipping it -> {}", ex.getMessage());
+        messages.add(null);
+      }
+    }
+    try {
+      return apply(messages);
+    } catch(InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted applying journaled messages", ex);
+    }
+  }
+
+  private void deadLetterJournaled(byte[] record, int attempts, Throwable cause) throws IOException {
+    Message message = JournaledMessage.decode(record);
+    syncMetrics.recordDeadLetter();
+    deadLetterSink.write(message.getMessageId(), message.getBody(), attempts, String.valueOf(cause.getMessage()));
+  }
+
+  /**
+   * Decodes a batch of messages and fetches the sequencing state of every record they touch in a
+   * single lookup before handing their events to the partitions. Returns a future per message,
+   * completing once its events are applied; messages that cannot be parsed, or are null, will never
+   * apply and are complete straight away. Events with values that could not be converted to their
+   * column types are written to the dead letter sink, and the rest of their message is applied.
+   */
+  private List<CompletableFuture<Void>> apply(List<Message> messages) throws InterruptedException {
+    Map<Message, List<ChangeCaptureEvent>> decoded = new LinkedHashMap<>();
+    Map<Message, CompletableFuture<Void>> failed = new HashMap<>();
+    Set<String> objectIds = new HashSet<>();
+    for(Message message: messages) {
+      if(message == null) {
+        continue;
+      }
+      log.info("Received message id {}", message.getMessageId());
+      try {
+        List<ChangeCaptureEvent> changeCaptureEvents = deadLetterUnconvertible(message, deserialize(message));
+        changeCaptureEvents.forEach(e -> objectIds.add(e.getObjectId()));
+        decoded.put(message, changeCaptureEvents);
+      } catch( MessageParseException ex ) {
+        log.error("Error parsing message: {} -> {}", message.getBody(), ex.getMessage());
+      } catch( IOException ex ) {
+        failed.put(message, CompletableFuture.failedFuture(ex));
+      }
+    }
+    sequencingCache.prefetch(objectIds);
+    List<CompletableFuture<Void>> applied = new ArrayList<>();
+    for(Message message: messages) {
+      List<ChangeCaptureEvent> changeCaptureEvents = message == null? null: decoded.get(message);
+      if(message != null && failed.containsKey(message)) {
+        applied.add(failed.get(message));
+      } else {
+        applied.add(changeCaptureEvents == null? CompletableFuture.completedFuture(null): apply(message, changeCaptureEvents));
+      }
+    }
+    return applied;
+  }
+
+  /**
+   * Writes the events whose payload could not be converted to the dead letter sink, returning the
+   * others. Applying such an event would set the failed columns to null.
+   */
+  private List<ChangeCaptureEvent> deadLetterUnconvertible(Message message, List<ChangeCaptureEvent> changeCaptureEvents)
+      throws IOException {
+    List<ChangeCaptureEvent> convertible = new ArrayList<>(changeCaptureEvents.size());
+    for(ChangeCaptureEvent e: changeCaptureEvents) {
+      if(e.getConversionError() == null) {
+        convertible.add(e);
+        continue;
+      }
+      log.warn("Could not convert payload of object id {} in message id {}, writing it to the dead letter sink -> {}",
+          e.getObjectId(), message.getMessageId(), e.getConversionError());
+      syncMetrics.recordDeadLetter();
+      deadLetterSink.write(message.getMessageId(), message.getBody(), e, 0, e.getConversionError());
+    }
+    return convertible;
+  }
+
+  private CompletableFuture<Void> apply(Message message, List<ChangeCaptureEvent> changeCaptureEvents) throws InterruptedException {
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    if (isBatchUpdate(changeCaptureEvents)) {
+      Map<Integer, List<ChangeCaptureEvent>> eventsByPartition = changeCaptureEvents.stream()
+          .collect(Collectors.groupingBy(e -> partitionedExecutor.partitionFor(e.getObjectId())));
+      for(Map.Entry<Integer, List<ChangeCaptureEvent>> entry: eventsByPartition.entrySet()) {
+        futures.add(partitionedExecutor.submitToPartition(entry.getKey(), () -> processInBulk(message, entry.getValue()),
+            entry.getValue().size()));
+      }
+    } else {
+      for(ChangeCaptureEvent e: changeCaptureEvents) {
+        futures.add(eventCoalescer != null? eventCoalescer.submit(e, message): submitEvent(e, message));
+      }
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+  }
+
+  private CompletableFuture<Void> submitEvent(ChangeCaptureEvent e, Message message) {
+    return submitEvent(e, message, 1);
+  }
+
+  private CompletableFuture<Void> submitEvent(ChangeCaptureEvent e, Message message, int attempt) {
+    CompletableFuture<Void> applied;
+    try {
+      applied = partitionedExecutor.submit(e.getObjectId(), () -> {
+        try {
+          processEvent(message, e);
+        } catch(MessageSequencingException ex) {
+          throw new CompletionException(ex);
+        }
+      });
+    } catch(InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return CompletableFuture.failedFuture(ex);
+    }
+    return applied.handle((result, ex) -> ex == null? applied: retryEvent(e, message, attempt, ex))
+        .thenCompose(Function.identity());
+  }
+
+  /**
+   * Schedules another attempt at an update that arrived ahead of its record. The message stays
+   * undeleted, with its visibility extended to cover the delay, until the retry resolves. Once the
+   * attempts are used up the event is written to the dead letter sink and the message released.
+   */
+  private CompletableFuture<Void> retryEvent(ChangeCaptureEvent e, Message message, int attempt, Throwable ex) {
+    if(!(ex instanceof MessageSequencingException || ex.getCause() instanceof MessageSequencingException)) {
+      return CompletableFuture.failedFuture(ex);
+    }
+    if(!retryScheduler.canRetry(attempt)) {
+      log.warn("Could not apply update of object id {} after {} attempts, writing it to the dead letter sink", e.getObjectId(), attempt);
+      syncMetrics.recordDeadLetter();
+      try {
+        deadLetterSink.write(message.getMessageId(), message.getBody(), e, attempt, "No matching record found for update");
+        return CompletableFuture.completedFuture(null);
+      } catch(IOException ioe) {
+        return CompletableFuture.failedFuture(ioe);
+      }
+    }
+    long delayMillis = retryScheduler.delayFor(attempt);
+    log.info("Will retry update of object id {} from message id {} in {}ms, retry attempt {}", e.getObjectId(),
+        message.getMessageId(), delayMillis, attempt);
+    extendVisibility(message, delayMillis);
+    syncMetrics.recordRetry();
+    return retryScheduler.schedule(delayMillis, () -> submitEvent(e, message, attempt + 1));
+  }
+
+  private void extendVisibility(Message message, long delayMillis) {
+    if(message.getReceiptHandle() == null) {
+      // Journaled messages are already deleted from the queue
+      return;
+    }
+    int timeoutSeconds = (int)Math.min(MAX_VISIBILITY_TIMEOUT_SECONDS,
+        TimeUnit.MILLISECONDS.toSeconds(delayMillis) + 1 + retryVisibilityMarginSeconds);
+    try {
+      amazonSQS.changeMessageVisibility(sqsUrl, message.getReceiptHandle(), timeoutSeconds);
+    } catch(AmazonClientException ex) {
+      log.warn("Could not extend visibility of message id {} -> {}", message.getMessageId(), ex.getMessage());
+    }
+  }
+
   private List<ChangeCaptureEvent> deserialize(Message message) throws MessageParseException {
     try {
-      return gson.fromJson(message.getBody(), listType);
+      long start = System.nanoTime();
+      List<ChangeCaptureEvent> events = changeCaptureEventDecoder.decode(message.getBody(),
+          attribute(message, ChangeCaptureEventDecoder.CONTENT_TYPE_ATTRIBUTE),
+          attribute(message, ChangeCaptureEventDecoder.CONTENT_ENCODING_ATTRIBUTE));
+      syncMetrics.recordParse(System.nanoTime() - start, message.getBody());
+      return events;
     } catch(Exception ex) {
       throw new MessageParseException(ex);
     }
   }
 
-  private void processInBulk(Message message, List<ChangeCaptureEvent> events) {
+  private static String attribute(Message message, String name) {
+    MessageAttributeValue value = message.getMessageAttributes().get(name);
+    return value == null? null: value.getStringValue();
+  }
+
+  private void processInBulk(Message message, List<ChangeCaptureEvent> batch) {
+    List<ChangeCaptureEvent> events = batch.stream().filter(e -> !isDeletedSince(e)).collect(Collectors.toList());
+    if(events.isEmpty()) {
+      return;
+    }
     log.info("Processing bulk update of {} events", events.size());
     try {
-      oracleRepository.bulkDoCreate(events);
-    } catch( PersistenceException ex ) {
-      if(ex.getCause() instanceof ConstraintViolationException) {
-        log.warn("Caught duplicate key exception, will process batch individually...");
-        processIndividually(message, events);
+      List<ChangeCaptureEvent> rejected = upsertEnabled? oracleRepository.bulkDoUpsert(events):
+          oracleRepository.bulkDoCreate(events);
+      Set<ChangeCaptureEvent> rejectedEvents = new HashSet<>(rejected);
+      events.stream().filter(e -> !rejectedEvents.contains(e)).forEach(this::committed);
+      if(!rejected.isEmpty()) {
+        log.warn("{} of {} events rejected by a constraint, will process them individually...", rejected.size(), events.size());
+        processIndividually(message, rejected);
       }
+    } catch( PersistenceException ex ) {
+      // Fail the task so the message is redelivered rather than deleted with rows missing
+      log.error("Error processing bulk update of message id {} -> {}", message.getMessageId(), ex.getMessage());
+      throw ex;
     }
   }
 
+  // Only creates are applied in bulk, so the rejected events never need sequencing. A row that still
+  // fails on its own fails the task, leaving the message for redelivery.
   private void processIndividually(Message message, List<ChangeCaptureEvent> events) {
     events.forEach(e -> {
-      log.info("Processing event {}", e);
-      switch(e.getAction()) {
-        case "C":
-          handleCreate(e);
-          break;
-        case "U":
-          try {
-            handleUpdate(e);
-          } catch (MessageSequencingException ex) {
-            log.info("Error occurred processing update of message id {}", message.getMessageId());
-            attemptRetry(message.getBody());
-          }
-          break;
-        case "D":
-          handleDelete(e);
-          break;
-        default:
-          log.error("Invalid action {}", e.getAction());
+      handleCreate(e);
+      committed(e);
+    });
+  }
+
+  private void processEvent(Message message, ChangeCaptureEvent e) throws MessageSequencingException {
+    log.info("Processing event {}", e);
+    switch(e.getAction()) {
+      case "C":
+        handleCreate(e);
+        break;
+      case "U":
+        try {
+          handleUpdate(e);
+        } catch (MessageSequencingException ex) {
+          log.info("Error occurred processing update of message id {}", message.getMessageId());
+          throw ex;
+        }
+        break;
+      case "D":
+        handleDelete(e);
+        break;
+      default:
+        log.error("Invalid action {}", e.getAction());
+        return;
+    }
+    committed(e);
+  }
+
+  private void committed(ChangeCaptureEvent e) {
+    afterCompletion(e.getObjectId(), () -> {
+      // Other instances trust the shared store's version, so only a committed write may move it on
+      if(!"D".equals(e.getAction()) && e.getCreatedTime() != null) {
+        sequencingCache.recordApplied(e.getObjectId(), e.getCreatedTime().getTime());
+      }
+      syncMetrics.recordCommitted(e);
+    });
+  }
+
+  /**
+   * Runs the action once the surrounding transaction commits, or straight away outside one. If the
+   * transaction rolls back instead, the cached sequencing state of the record is dropped as it may
+   * describe a write that never happened.
+   */
+  private void afterCompletion(String objectId, Runnable onCommit) {
+    if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+      onCommit.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCompletion(int status) {
+        if(status == STATUS_COMMITTED) {
+          onCommit.run();
+        } else {
+          sequencingCache.invalidate(objectId);
+        }
       }
     });
   }
@@ -143,10 +599,19 @@ public class EventConsumerStartup implements ApplicationRunner {
   private void handleCreate(ChangeCaptureEvent e) {
     try {
       log.info("Processing create for object type {} id {} from user {}", e.getObjectType(), e.getObjectId(), e.getUserName());
+      if(isDeletedSince(e)) {
+        log.info("Object id {} deleted after this create, discarding create..", e.getObjectId());
+        return;
+      }
+      if(upsertEnabled) {
+        oracleRepository.doUpsert(e);
+        return;
+      }
       oracleRepository.doCreate(e);
     } catch(PersistenceException ex) {
-      if(ex.getCause() instanceof ConstraintViolationException) {
+      if(isConstraintViolation(ex)) {
         log.warn("Already found object type {} with id {}, updating instead", e.getObjectType(), e.getObjectId());
+        syncMetrics.recordConstraintFallbacks("single", 1);
         oracleRepository.doUpdate(e);
       } else {
         throw ex;
@@ -154,41 +619,115 @@ public class EventConsumerStartup implements ApplicationRunner {
     }
   }
 
-  private void handleUpdate(ChangeCaptureEvent e) throws MessageSequencingException {
+  // Package-private so the tests can apply an update without a queue
+  void handleUpdate(ChangeCaptureEvent e) throws MessageSequencingException {
     log.info("Processing update for object type {} id {} from user {}", e.getObjectType(), e.getObjectId(), e.getUserName());
-    if(deletedItemsCache.contains(e.getObjectId())) {
+    RecordState state = sequencingCache.get(e.getObjectId());
+    if(state != null && state.isDeleted()) {
       log.info("Object id {} already deleted, discarding update..", e.getObjectId());
+    } else if(state != null && e.getCreatedTime() != null && e.getCreatedTime().getTime() < state.getVersion()) {
+      log.info("Object id {} already has a later change than this update, discarding update..", e.getObjectId());
+    } else if(upsertEnabled) {
+      oracleRepository.doUpsert(e);
     } else if(oracleRepository.doUpdate(e) == 0) {
-      throw new MessageSequencingException();
+      if(!versionedWritesEnabled) {
+        throw new MessageSequencingException();
+      }
+      log.info("Object id {} not found for update, upserting instead", e.getObjectId());
+      oracleRepository.doUpsert(e);
     }
   }
 
   private void handleDelete(ChangeCaptureEvent e) {
     log.info("Processing delete for object type {} id {} from user {}", e.getObjectType(), e.getObjectId(), e.getUserName());
     if(oracleRepository.doDelete(e) == 0) {
-      log.warn("No matching record found for delete, discarding..");
-    } else {
-      deletedItemsCache.add(e.getObjectId()); // Add delete to cache
+      log.warn("No matching record found for delete..");
     }
+    // Tombstone the record even when it is not there yet, so a create arriving late does not bring it back
+    sequencingCache.recordDeleted(e.getObjectId(), versionOf(e));
   }
 
-  private void attemptRetry(String messageBody) {
-    int retries = updateRetryMessagesCache.getOrDefault(messageBody, 1);
-    if( retries < UPDATE_RETRY_ATTEMPTS) {
-      log.info("Will push message back onto the queue, retry attempt {}", retries);
-      executorService.schedule(() -> {amazonSQS.sendMessage(sqsUrl, messageBody);}, 250, TimeUnit.MILLISECONDS);
-      updateRetryMessagesCache.put(messageBody, ++retries);
-    } else {
-      log.warn("Could not process update message after {} retries, discarding.", retries);
-    }
+  // A create or batch load older than the record's delete is a replay and must not resurrect it
+  private boolean isDeletedSince(ChangeCaptureEvent e) {
+    RecordState state = sequencingCache.get(e.getObjectId());
+    return state != null && state.isDeleted() && versionOf(e) <= state.getVersion();
+  }
+
+  private static long versionOf(ChangeCaptureEvent e) {
+    return e.getCreatedTime() == null? 0: e.getCreatedTime().getTime();
   }
 
   private void deleteMessage(Message message) {
-    amazonSQS.deleteMessage(new DeleteMessageRequest().withQueueUrl(sqsUrl).withReceiptHandle(message.getReceiptHandle()));
-    log.info("Deleted processed message id {}", message.getMessageId());
+    messageAcknowledger.acknowledge(message);
+    syncMetrics.recordDelete();
+    log.debug("Queued processed message id {} for deletion", message.getMessageId());
+  }
+
+  @Scheduled(fixedDelayString = "${sync.cache.stats-interval-ms:300000}")
+  public void logCacheStatistics() {
+    ExpiringCache<String, RecordState> cache = sequencingCache.getStates();
+    log.info("Cache {}: size {}, hits {}, misses {}, evictions {}", cache.getName(), cache.size(),
+        cache.getHits(), cache.getMisses(), cache.getEvictions());
+  }
+
+  @Scheduled(fixedDelayString = "${sync.cache.stats-interval-ms:300000}")
+  public void logRetryStatistics() {
+    if(retryScheduler != null) {
+      log.info("Retries: {} pending", retryScheduler.getPending());
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${sync.cache.stats-interval-ms:300000}")
+  public void logCoalescerStatistics() {
+    if(eventCoalescer != null) {
+      log.info("Coalescer: received {}, emitted {}, folded {}, cancelled {}", eventCoalescer.getReceived(),
+          eventCoalescer.getEmitted(), eventCoalescer.getFolded(), eventCoalescer.getCancelled());
+    }
+  }
+
+  private void registerCoalescerMetrics() {
+    syncMetrics.registerFunctionCounter("sync.coalescer.received", "Events submitted to the coalescer", eventCoalescer,
+        EventCoalescer::getReceived);
+    syncMetrics.registerFunctionCounter("sync.coalescer.emitted", "Events passed on by the coalescer", eventCoalescer,
+        EventCoalescer::getEmitted);
+    syncMetrics.registerFunctionCounter("sync.coalescer.folded", "Events folded into a pending event for the same record",
+        eventCoalescer, EventCoalescer::getFolded);
+    syncMetrics.registerFunctionCounter("sync.coalescer.cancelled", "Creates dropped together with a later delete of the same record",
+        eventCoalescer, EventCoalescer::getCancelled);
+  }
+
+  @Scheduled(fixedDelayString = "${sync.cache.stats-interval-ms:300000}")
+  public void logJournalStatistics() {
+    if(journalApplier != null) {
+      log.info("Journal: {} segments, {} bytes behind, {} applied, {} in flight, {} retried, {} dead lettered",
+          journal.getSegmentCount(), journal.getBacklogBytes(), journalApplier.getApplied(), journalApplier.getInFlight(),
+          journalApplier.getRetried(), journalApplier.getDeadLettered());
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${sync.cache.stats-interval-ms:300000}")
+  public void logAdaptiveLimiterStatistics() {
+    if(!adaptiveLimiter.isEnabled()) {
+      return;
+    }
+    log.info("Oracle writes: {} of {} allowed in flight, {} rows per batch, {}ms smoothed latency, {} backoffs",
+        adaptiveLimiter.getInFlight(), adaptiveLimiter.getConcurrencyLimit(), adaptiveLimiter.getBatchSize(),
+        Math.round(adaptiveLimiter.getSmoothedLatencyMillis()), adaptiveLimiter.getDecreases());
+  }
+
+  @Scheduled(fixedDelayString = "${sync.cache.stats-interval-ms:300000}")
+  public void logGroupCommitStatistics() {
+    if(partitionedExecutor != null && groupCommitMaxRows > 1) {
+      log.info("Group commit: {} groups committed, {} split after a failure", partitionedExecutor.getGroupsCommitted(),
+          partitionedExecutor.getGroupsSplit());
+    }
+  }
+
+  private boolean isConstraintViolation(PersistenceException ex) {
+    return ex instanceof ConstraintViolationException || ex.getCause() instanceof ConstraintViolationException;
   }
 
-  private boolean isBatchUpdate(List<ChangeCaptureEvent> events) {
+  static boolean isBatchUpdate(List<ChangeCaptureEvent> events) {
     return events.stream().allMatch(e -> "batch".equals(e.getUserName()) && "C".equals(e.getAction()));
   }
 
@@ -4,10 +4,14 @@ import com.mishima.sync.model.OracleColumnDefinition;
 import com.mishima.sync.model.OracleTableDefinition;
 import com.mishima.sync.model.SalesforceFieldDefinition;
 import com.mishima.sync.model.SalesforceObjectDescribe;
+import java.util.List;
 import java.util.stream.Collectors;
 
 public class OdsSchemaUtils {
 
+  // Version of the change last applied to a row, in epoch millis of the change event
+  public static final String VERSION_COLUMN = "ods_version";
+
   public static String mapObjectTypeToOdsTableName(String objectType) {
     return objectType.toLowerCase().substring(0, Math.min(objectType.length(), 30) -3) + "__c";
   }
@@ -20,11 +24,24 @@ public class OdsSchemaUtils {
     }
   }
 
+  /**
+   * Maps the object to a table with a column per field plus the version column. Tables created
+   * before the version column existed take it with {@code ALTER TABLE <name> ADD (ODS_VERSION NUMBER(19))}.
+   */
   public static OracleTableDefinition mapToOdsTableDefinition(SalesforceObjectDescribe sfObject) {
+    List<OracleColumnDefinition> columns = sfObject.getFields().stream().map(
+        OdsSchemaUtils::getOdsColumnDefinition).collect(Collectors.toList());
+    columns.add(getVersionColumnDefinition());
     return OracleTableDefinition.builder()
         .name(mapObjectTypeToOdsTableName(sfObject.getName()).toUpperCase())
-        .columns( sfObject.getFields().stream().map(
-            OdsSchemaUtils::getOdsColumnDefinition).collect(Collectors.toList()))
+        .columns(columns)
+        .build();
+  }
+
+  public static OracleColumnDefinition getVersionColumnDefinition() {
+    return OracleColumnDefinition.builder()
+        .name(VERSION_COLUMN.toUpperCase())
+        .dataType("NUMBER(19)")
         .build();
   }
 
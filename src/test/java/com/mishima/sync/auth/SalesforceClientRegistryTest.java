@@ -0,0 +1,119 @@
+package com.mishima.sync.auth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.mishima.sync.model.SalesforceObjectDescribe;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+
+public class SalesforceClientRegistryTest {
+
+  private HttpServer server;
+  private String baseUri;
+  private final AtomicInteger tokensIssued = new AtomicInteger();
+  private final List<String> authorizations = new ArrayList<>();
+  private final List<SalesforceClientRegistry> registries = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/token", exchange -> {
+      String body = "{\"access_token\":\"token-" + tokensIssued.incrementAndGet() + "\",\"token_type\":\"Bearer\"}";
+      respond(exchange, body.getBytes(StandardCharsets.UTF_8), false);
+    });
+    server.createContext("/data", exchange -> {
+      authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+      String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+      boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try(OutputStream out = gzip? new GZIPOutputStream(bytes): bytes) {
+        out.write("{\"name\":\"Party__c\"}".getBytes(StandardCharsets.UTF_8));
+      }
+      respond(exchange, bytes.toByteArray(), gzip);
+    });
+    server.start();
+    baseUri = "http://localhost:" + server.getAddress().getPort();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    for(SalesforceClientRegistry registry: registries) {
+      registry.destroy();
+    }
+    server.stop(0);
+  }
+
+  @Test
+  public void testClientAndTokenReusedAcrossRequests() {
+    SalesforceClientRegistry registry = registry(120, 300);
+    OAuth2RestTemplate template = registry.getTemplate(baseUri + "/token", "client", "secret", "user", "password");
+    assertSame(template, registry.getTemplate(baseUri + "/token", "client", "secret", "user", "password"));
+    assertEquals("Party__c", template.getForObject(baseUri + "/data", SalesforceObjectDescribe.class).getName());
+    template = registry.getTemplate(baseUri + "/token", "client", "secret", "user", "password");
+    template.getForObject(baseUri + "/data", SalesforceObjectDescribe.class);
+    assertEquals(1, tokensIssued.get());
+    assertEquals("Bearer token-1", authorizations.get(1));
+    assertNotSame(template, registry.getTemplate(baseUri + "/token", "client", "secret", "user", "changed"));
+  }
+
+  @Test
+  public void testTokenReplacedBeforeItExpires() {
+    // A refresh margin longer than the token lifetime makes every token due for replacement at once
+    SalesforceClientRegistry registry = registry(1, 120);
+    OAuth2RestTemplate template = registry.getTemplate(baseUri + "/token", "client", "secret", "user", "password");
+    template.getForObject(baseUri + "/data", SalesforceObjectDescribe.class);
+    template.getForObject(baseUri + "/data", SalesforceObjectDescribe.class);
+    assertEquals(2, tokensIssued.get());
+    assertEquals("Bearer token-2", authorizations.get(1));
+  }
+
+  @Test
+  public void testOldestClientEvictedBeyondMaxSize() {
+    SalesforceClientRegistry registry = registry(120, 300, 2);
+    OAuth2RestTemplate first = registry.getTemplate(baseUri + "/token", "client", "secret", "user-1", "password");
+    OAuth2RestTemplate second = registry.getTemplate(baseUri + "/token", "client", "secret", "user-2", "password");
+    // Using the first client again keeps it, so the third pushes out the second
+    assertSame(first, registry.getTemplate(baseUri + "/token", "client", "secret", "user-1", "password"));
+    registry.getTemplate(baseUri + "/token", "client", "secret", "user-3", "password");
+    assertSame(first, registry.getTemplate(baseUri + "/token", "client", "secret", "user-1", "password"));
+    assertNotSame(second, registry.getTemplate(baseUri + "/token", "client", "secret", "user-2", "password"));
+  }
+
+  private SalesforceClientRegistry registry(long tokenLifetimeMinutes, long refreshMarginSeconds) {
+    return registry(tokenLifetimeMinutes, refreshMarginSeconds, 100);
+  }
+
+  private SalesforceClientRegistry registry(long tokenLifetimeMinutes, long refreshMarginSeconds, long maxClients) {
+    SalesforceClientRegistry registry = new SalesforceClientRegistry(4, 1000, 5000, 30000, tokenLifetimeMinutes, refreshMarginSeconds,
+        maxClients, 60);
+    registries.add(registry);
+    return registry;
+  }
+
+  private static void respond(HttpExchange exchange, byte[] body, boolean gzip) throws IOException {
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    if(gzip) {
+      exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+    }
+    exchange.sendResponseHeaders(200, body.length);
+    try(OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+}
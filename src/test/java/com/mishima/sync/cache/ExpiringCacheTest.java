@@ -0,0 +1,59 @@
+package com.mishima.sync.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class ExpiringCacheTest {
+
+  private final AtomicLong clock = new AtomicLong();
+
+  @Test
+  public void testEntriesExpireAfterTtl() {
+    ExpiringCache<String,Boolean> cache = new ExpiringCache<>("test", 10, 1000, clock::get);
+    cache.put("a", Boolean.TRUE);
+    clock.set(999);
+    assertTrue(cache.contains("a"));
+    clock.set(1000);
+    assertFalse(cache.contains("a"));
+    assertEquals(0, cache.size());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void testOldestEntriesEvictedWhenFull() {
+    ExpiringCache<String,Integer> cache = new ExpiringCache<>("test", 2, 1000, clock::get);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("a", 3);
+    cache.put("c", 4);
+    assertEquals(2, cache.size());
+    assertFalse(cache.contains("b"));
+    assertEquals(3, (int)cache.get("a"));
+    assertEquals(4, (int)cache.get("c"));
+  }
+
+  @Test
+  public void testOverwriteRestartsTtlAndKeepsOneEntry() {
+    ExpiringCache<String,Integer> cache = new ExpiringCache<>("test", 2, 1000, clock::get);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    clock.set(500);
+    for(int i = 0; i < 1000; i++) {
+      cache.put("a", i);
+    }
+    assertEquals(2, cache.size());
+    clock.set(1000);
+    assertFalse(cache.contains("b"));
+    assertEquals(999, (int)cache.get("a"));
+    clock.set(1500);
+    assertFalse(cache.contains("a"));
+    assertEquals(2, cache.getEvictions());
+  }
+
+}
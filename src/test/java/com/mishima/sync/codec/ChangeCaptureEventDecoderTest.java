@@ -0,0 +1,148 @@
+package com.mishima.sync.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.ColumnMetadata;
+import com.mishima.sync.model.ColumnType;
+import com.mishima.sync.model.TableMetadata;
+import com.mishima.sync.repository.OracleSchemaRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ChangeCaptureEventDecoderTest {
+
+  private final ChangeCaptureEventDecoder decoder = new ChangeCaptureEventDecoder();
+
+  private TableMetadata table;
+
+  @Before
+  public void setUp() {
+    TreeSet<ColumnMetadata> columns = new TreeSet<>();
+    columns.add(column("id", "varchar2"));
+    columns.add(column("amount__c", "number"));
+    columns.add(column("active__c", "number"));
+    table = new TableMetadata("invoice__c", columns);
+    OracleSchemaRegistry oracleSchemaRegistry = mock(OracleSchemaRegistry.class);
+    when(oracleSchemaRegistry.getTable("invoice__c")).thenReturn(table);
+    ReflectionTestUtils.setField(decoder, "oracleSchemaRegistry", oracleSchemaRegistry);
+  }
+
+  @Test
+  public void testDecodeMapsPayloadToRow() throws Exception {
+    String body = "[{\"userName\":\"batch\",\"action\":\"C\",\"objectId\":\"a00000000000001\","
+        + "\"objectType\":\"Invoice__c\",\"fullPayload\":{\"id\":\"a00000000000001\",\"amount__c\":12.50,"
+        + "\"active__c\":true,\"unmapped__c\":\"dropped\"}}]";
+    List<ChangeCaptureEvent> events = decoder.decode(new StringReader(body));
+    assertEquals(1, events.size());
+    ChangeCaptureEvent event = events.get(0);
+    assertEquals("C", event.getAction());
+    assertNull(event.getFullPayload());
+    Object[] values = event.getRow().getValues();
+    assertEquals("a00000000000001", values[table.indexOf("id")]);
+    assertEquals(new BigDecimal("12.50"), values[table.indexOf("amount__c")]);
+    assertEquals(BigDecimal.ONE, values[table.indexOf("active__c")]);
+  }
+
+  @Test
+  public void testDecodePayloadBeforeObjectType() throws Exception {
+    String body = "[{\"fullPayload\":{\"id\":\"a00000000000001\",\"active__c\":false},"
+        + "\"action\":\"U\",\"objectType\":\"Invoice__c\",\"objectId\":\"a00000000000001\"}]";
+    ChangeCaptureEvent event = decoder.decode(new StringReader(body)).get(0);
+    assertEquals(BigDecimal.ZERO, event.getRow().getValues()[table.indexOf("active__c")]);
+  }
+
+  @Test
+  public void testDecodeGzippedBody() throws Exception {
+    String json = "[{\"action\":\"U\",\"objectType\":\"Invoice__c\",\"objectId\":\"a00000000000001\","
+        + "\"fullPayload\":{\"id\":\"a00000000000001\",\"amount__c\":3}}]";
+    List<ChangeCaptureEvent> events = decoder.decode(gzip(json), null, ChangeCaptureEventDecoder.CONTENT_ENCODING_GZIP);
+    assertEquals(1, events.size());
+    assertEquals(new BigDecimal("3"), events.get(0).getRow().getValues()[table.indexOf("amount__c")]);
+  }
+
+  @Test
+  public void testDecodeColumnarBody() throws Exception {
+    String body = "[{\"objectType\":\"Invoice__c\",\"fields\":[\"id\",\"unmapped__c\",\"amount__c\"],\"events\":["
+        + "{\"action\":\"C\",\"objectId\":\"a00000000000001\",\"values\":[\"a00000000000001\",\"dropped\",1.5]},"
+        + "{\"action\":\"U\",\"objectId\":\"a00000000000002\",\"values\":[\"a00000000000002\",null,null]}]}]";
+    List<ChangeCaptureEvent> events = decoder.decode(gzip(body), ChangeCaptureEventDecoder.CONTENT_TYPE_COLUMNAR,
+        ChangeCaptureEventDecoder.CONTENT_ENCODING_GZIP);
+    assertEquals(2, events.size());
+    assertEquals("Invoice__c", events.get(1).getObjectType());
+    assertEquals("U", events.get(1).getAction());
+    Object[] values = events.get(0).getRow().getValues();
+    assertEquals("a00000000000001", values[table.indexOf("id")]);
+    assertEquals(new BigDecimal("1.5"), values[table.indexOf("amount__c")]);
+    assertNull(events.get(1).getRow().getValues()[table.indexOf("amount__c")]);
+  }
+
+  @Test(expected = IOException.class)
+  public void testColumnarEventsBeforeFieldsAreRejected() throws Exception {
+    String body = "[{\"objectType\":\"Invoice__c\",\"events\":["
+        + "{\"action\":\"C\",\"objectId\":\"a00000000000001\",\"values\":[\"a00000000000001\"]}],"
+        + "\"fields\":[\"id\"]}]";
+    decoder.decodeColumnar(new StringReader(body), event -> {});
+  }
+
+  @Test(expected = IOException.class)
+  public void testColumnarEventWithoutValuesIsRejected() throws Exception {
+    String body = "[{\"objectType\":\"Invoice__c\",\"fields\":[\"id\"],\"events\":["
+        + "{\"action\":\"D\",\"objectId\":\"a00000000000001\"}]}]";
+    decoder.decodeColumnar(new StringReader(body), event -> {});
+  }
+
+  @Test
+  public void testUnconvertibleValueOnlyFlagsItsEvent() throws Exception {
+    String body = "[{\"action\":\"U\",\"objectType\":\"Invoice__c\",\"objectId\":\"a00000000000001\","
+        + "\"fullPayload\":{\"id\":\"a00000000000001\",\"amount__c\":\"twelve\",\"active__c\":true}},"
+        + "{\"action\":\"U\",\"objectType\":\"Invoice__c\",\"objectId\":\"a00000000000002\","
+        + "\"fullPayload\":{\"id\":\"a00000000000002\",\"amount__c\":4}}]";
+    List<ChangeCaptureEvent> events = decoder.decode(new StringReader(body));
+    assertEquals(2, events.size());
+    assertTrue(events.get(0).getConversionError().startsWith("amount__c value twelve is not a valid NUMBER"));
+    assertEquals(BigDecimal.ONE, events.get(0).getRow().getValues()[table.indexOf("active__c")]);
+    assertNull(events.get(1).getConversionError());
+    assertEquals(new BigDecimal("4"), events.get(1).getRow().getValues()[table.indexOf("amount__c")]);
+  }
+
+  @Test
+  public void testBlankNumbersAndDatesDecodeAsNull() throws Exception {
+    String body = "[{\"action\":\"U\",\"objectType\":\"Invoice__c\",\"objectId\":\"a00000000000001\","
+        + "\"fullPayload\":{\"id\":\"a00000000000001\",\"amount__c\":\"\",\"active__c\":\" \"}}]";
+    ChangeCaptureEvent event = decoder.decode(new StringReader(body)).get(0);
+    assertNull(event.getConversionError());
+    assertNull(event.getRow().getValues()[table.indexOf("amount__c")]);
+    assertNull(event.getRow().getValues()[table.indexOf("active__c")]);
+    assertNull(ColumnType.TIMESTAMP.convert(""));
+    assertNull(ColumnType.DATE.convert(""));
+    assertEquals("", ColumnType.TEXT.convert(""));
+  }
+
+  private static String gzip(String text) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try(GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      gzip.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+    return Base64.getEncoder().encodeToString(bytes.toByteArray());
+  }
+
+  private ColumnMetadata column(String name, String dataType) {
+    return ColumnMetadata.builder().columnName(name).dataType(dataType).columnType(ColumnType.fromDataType(dataType)).build();
+  }
+
+}
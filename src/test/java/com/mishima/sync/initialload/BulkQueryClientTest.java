@@ -0,0 +1,94 @@
+package com.mishima.sync.initialload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.GsonHttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+
+public class BulkQueryClientTest {
+
+  private static final String JOBS_PATH = "/services/data/v47.0/jobs/query";
+
+  private HttpServer server;
+  private BulkQueryClient client;
+  private final AtomicInteger polls = new AtomicInteger();
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext(JOBS_PATH, exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      String query = exchange.getRequestURI().getQuery();
+      String body;
+      String contentType = "application/json";
+      if("POST".equals(exchange.getRequestMethod())) {
+        body = "{\"id\":\"750x\",\"operation\":\"query\",\"object\":\"Account\",\"state\":\"UploadComplete\"}";
+      } else if(path.endsWith("/results")) {
+        contentType = "text/csv";
+        if(query.contains("locator=MTAw")) {
+          body = "\"Id\",\"Name\"\n\"a02\",\"Second\"\n";
+          exchange.getResponseHeaders().add("Sforce-Locator", "null");
+        } else {
+          body = "\"Id\",\"Name\"\n\"a01\",\"First\"\n";
+          exchange.getResponseHeaders().add("Sforce-Locator", "MTAw");
+        }
+      } else {
+        String state = polls.incrementAndGet() < 2? "InProgress": "JobComplete";
+        body = "{\"id\":\"750x\",\"state\":\"" + state + "\",\"numberRecordsProcessed\":2}";
+      }
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", contentType);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try(OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.start();
+    RestTemplate restTemplate = new RestTemplate();
+    restTemplate.getMessageConverters().add(0, new GsonHttpMessageConverter());
+    client = new BulkQueryClient(restTemplate, "http://localhost:" + server.getAddress().getPort(), 1);
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testCreatesJobAndReadsEveryPage() throws InterruptedException {
+    String jobId = client.createQueryJob("SELECT Id, Name FROM Account").getId();
+    assertEquals("750x", jobId);
+    assertEquals(2, client.awaitCompletion(jobId).getNumberRecordsProcessed());
+    assertEquals(2, polls.get());
+
+    List<String> ids = new ArrayList<>();
+    String locator = client.readResults(jobId, null, 1, csv -> readIds(csv, ids));
+    assertEquals("MTAw", locator);
+    assertNull(client.readResults(jobId, locator, 1, csv -> readIds(csv, ids)));
+    assertEquals(Arrays.asList("a01", "a02"), ids);
+  }
+
+  private static void readIds(Reader csv, List<String> ids) throws IOException {
+    CsvReader reader = new CsvReader(csv);
+    reader.readRecord();
+    String[] record;
+    while((record = reader.readRecord()) != null) {
+      ids.add(record[0]);
+    }
+  }
+
+}
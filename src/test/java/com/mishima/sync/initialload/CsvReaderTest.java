@@ -0,0 +1,35 @@
+package com.mishima.sync.initialload;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+
+public class CsvReaderTest {
+
+  @Test
+  public void testReadsQuotedFieldsWithDelimitersQuotesAndLineBreaks() throws IOException {
+    CsvReader reader = new CsvReader(new StringReader("\"Id\",\"Name\"\n\"a01\",\"Smith, \"\"Jo\"\"\nSecond line\"\n"));
+    assertArrayEquals(new String[] {"Id", "Name"}, reader.readRecord());
+    assertArrayEquals(new String[] {"a01", "Smith, \"Jo\"\nSecond line"}, reader.readRecord());
+    assertNull(reader.readRecord());
+  }
+
+  @Test
+  public void testUnquotedEmptyFieldsAreNull() throws IOException {
+    CsvReader reader = new CsvReader(new StringReader("a01,,\"\",x\r\na02,b,c,\r\n"));
+    assertArrayEquals(new String[] {"a01", null, "", "x"}, reader.readRecord());
+    assertArrayEquals(new String[] {"a02", "b", "c", null}, reader.readRecord());
+    assertNull(reader.readRecord());
+  }
+
+  @Test
+  public void testReadsLastRecordWithoutLineBreak() throws IOException {
+    CsvReader reader = new CsvReader(new StringReader("a01,b"));
+    assertArrayEquals(new String[] {"a01", "b"}, reader.readRecord());
+    assertNull(reader.readRecord());
+  }
+
+}
@@ -0,0 +1,196 @@
+package com.mishima.sync.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mishima.sync.processor.RetryScheduler;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalTest {
+
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("journal");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    try(Stream<Path> files = Files.walk(directory)) {
+      for(Path path: files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  public void testRecordsAreReadableOnceSynced() throws Exception {
+    Journal journal = new Journal(directory, 1024);
+    long start = journal.getCheckpoint();
+    journal.append(bytes("first"));
+    assertEquals(0, journal.read(start, 10, 0).size());
+    journal.append(bytes("second"));
+    journal.sync();
+    List<JournalRecord> records = journal.read(start, 10, 0);
+    assertEquals(List.of("first", "second"), text(records));
+    assertEquals(List.of("second"), text(journal.read(records.get(0).getPosition(), 10, 0)));
+    journal.close();
+  }
+
+  @Test
+  public void testReadsAcrossSegmentsAndDeletesAppliedOnes() throws Exception {
+    Journal journal = new Journal(directory, 64);
+    for(int i = 0; i < 10; i++) {
+      journal.append(bytes("record-" + i));
+    }
+    journal.sync();
+    assertTrue(journal.getSegmentCount() > 1);
+    List<JournalRecord> records = journal.read(journal.getCheckpoint(), 100, 0);
+    assertEquals(10, records.size());
+    assertEquals("record-9", text(records).get(9));
+    journal.checkpoint(records.get(8).getPosition());
+    assertEquals(List.of("record-9"), text(journal.read(journal.getCheckpoint(), 100, 0)));
+    assertEquals(Journal.segmentOf(records.get(8).getPosition()), (int)segmentIds().get(0));
+    journal.close();
+  }
+
+  @Test
+  public void testReopenResumesFromCheckpointAndDropsTornRecord() throws Exception {
+    Journal journal = new Journal(directory, 1024);
+    long first = journal.append(bytes("applied"));
+    long second = journal.append(bytes("pending"));
+    journal.sync();
+    journal.checkpoint(first);
+    journal.close();
+    // Simulate a crash part way through writing a record: a length with a payload that never arrived
+    try(FileChannel channel = FileChannel.open(directory.resolve("0000000000.segment"), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4).putInt(0, 100), Journal.offsetOf(second));
+    }
+    journal = new Journal(directory, 1024);
+    assertEquals(List.of("pending"), text(journal.read(journal.getCheckpoint(), 10, 0)));
+    journal.append(bytes("after restart"));
+    journal.sync();
+    assertEquals(List.of("pending", "after restart"), text(journal.read(journal.getCheckpoint(), 10, 0)));
+    journal.close();
+  }
+
+  @Test
+  public void testApplierRetriesFailuresAndCheckpointsInOrder() throws Exception {
+    Journal journal = new Journal(directory, 1024);
+    for(int i = 0; i < 5; i++) {
+      journal.append(bytes("record-" + i));
+    }
+    journal.sync();
+    List<String> applied = Collections.synchronizedList(new ArrayList<>());
+    AtomicBoolean failed = new AtomicBoolean();
+    RetryScheduler retryScheduler = new RetryScheduler("test-retry", 10, 10, Integer.MAX_VALUE);
+    retryScheduler.start();
+    JournalApplier applier = new JournalApplier(journal, payloads -> payloads.stream().map(payload -> {
+      String text = new String(payload, StandardCharsets.UTF_8);
+      if(text.equals("record-2") && failed.compareAndSet(false, true)) {
+        return CompletableFuture.<Void>failedFuture(new IllegalStateException("Oracle unavailable"));
+      }
+      applied.add(text);
+      return CompletableFuture.<Void>completedFuture(null);
+    }).collect(Collectors.toList()), (payload, attempts, cause) -> {}, 10, 100, retryScheduler, 0);
+    applier.start();
+    long deadline = System.currentTimeMillis() + 10000;
+    while(applier.getApplied() < 5 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    applier.stop();
+    retryScheduler.stop();
+    assertEquals(5, applied.size());
+    assertEquals(1, applier.getRetried());
+    assertEquals(0, journal.read(journal.getCheckpoint(), 10, 0).size());
+    journal.close();
+  }
+
+  @Test
+  public void testApplierDeadLettersRecordAfterMaxAttempts() throws Exception {
+    Journal journal = new Journal(directory, 1024);
+    for(int i = 0; i < 3; i++) {
+      journal.append(bytes("record-" + i));
+    }
+    journal.sync();
+    List<String> deadLettered = Collections.synchronizedList(new ArrayList<>());
+    RetryScheduler retryScheduler = new RetryScheduler("test-retry", 10, 10, 3);
+    retryScheduler.start();
+    JournalApplier applier = new JournalApplier(journal, payloads -> payloads.stream().map(payload ->
+        new String(payload, StandardCharsets.UTF_8).equals("record-1")
+            ? CompletableFuture.<Void>failedFuture(new IllegalStateException("Poison record"))
+            : CompletableFuture.<Void>completedFuture(null)
+    ).collect(Collectors.toList()), (payload, attempts, cause) -> {
+      assertEquals(3, attempts);
+      deadLettered.add(new String(payload, StandardCharsets.UTF_8));
+    }, 10, 100, retryScheduler, 0);
+    applier.start();
+    long deadline = System.currentTimeMillis() + 10000;
+    while(applier.getApplied() + applier.getDeadLettered() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    applier.stop();
+    retryScheduler.stop();
+    assertEquals(List.of("record-1"), deadLettered);
+    assertEquals(2, applier.getApplied());
+    assertEquals(2, applier.getRetried());
+    assertEquals(0, journal.read(journal.getCheckpoint(), 10, 0).size());
+    journal.close();
+  }
+
+  @Test
+  public void testApplierFillsInFlightLimitWithSmallBatches() throws Exception {
+    Journal journal = new Journal(directory, 1024);
+    for(int i = 0; i < 10; i++) {
+      journal.append(bytes("record-" + i));
+    }
+    journal.sync();
+    RetryScheduler retryScheduler = new RetryScheduler("test-retry", 10, 10, 3);
+    JournalApplier applier = new JournalApplier(journal, payloads -> payloads.stream()
+        .map(payload -> new CompletableFuture<Void>()).collect(Collectors.toList()),
+        (payload, attempts, cause) -> {}, 2, 6, retryScheduler, 60000);
+    applier.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while(applier.getInFlight() < 6 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(50);
+    assertEquals(6, applier.getInFlight());
+    applier.stop();
+    journal.close();
+  }
+
+  private List<Integer> segmentIds() throws IOException {
+    try(Stream<Path> files = Files.list(directory)) {
+      return files.map(path -> path.getFileName().toString()).filter(name -> name.endsWith(".segment"))
+          .map(name -> Integer.parseInt(name.substring(0, name.indexOf('.')))).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static List<String> text(List<JournalRecord> records) {
+    return records.stream().map(record -> new String(record.getPayload(), StandardCharsets.UTF_8)).collect(Collectors.toList());
+  }
+
+}
@@ -0,0 +1,179 @@
+package com.mishima.sync.load;
+
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single in-memory queue behind the SQS client interface, with long polling, visibility timeouts
+ * and redelivery of messages that are not deleted in time. The queue url is ignored. The time from
+ * sending to deleting each message is recorded as its apply latency.
+ */
+public class InMemoryAmazonSQS extends AbstractAmazonSQS {
+
+  private final long visibilityTimeoutMillis;
+  private final LatencyRecorder applyLatency;
+
+  private final Deque<StoredMessage> visible = new ArrayDeque<>();
+  private final Map<String, StoredMessage> inFlight = new HashMap<>();
+
+  private long sent;
+  private long deleted;
+  private long redelivered;
+
+  public InMemoryAmazonSQS(long visibilityTimeoutMillis, LatencyRecorder applyLatency) {
+    this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+    this.applyLatency = applyLatency;
+  }
+
+  @Override
+  public synchronized SendMessageResult sendMessage(SendMessageRequest request) {
+    StoredMessage message = new StoredMessage(UUID.randomUUID().toString(), request.getMessageBody(), System.nanoTime());
+    visible.add(message);
+    sent++;
+    notifyAll();
+    return new SendMessageResult().withMessageId(message.id);
+  }
+
+  @Override
+  public synchronized ReceiveMessageResult receiveMessage(ReceiveMessageRequest request) {
+    long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(
+        request.getWaitTimeSeconds() == null? 0: request.getWaitTimeSeconds());
+    int maxMessages = request.getMaxNumberOfMessages() == null? 1: request.getMaxNumberOfMessages();
+    List<Message> messages = new ArrayList<>();
+    try {
+      while(true) {
+        requeueExpired();
+        while(messages.size() < maxMessages && !visible.isEmpty()) {
+          StoredMessage message = visible.poll();
+          message.receiptHandle = UUID.randomUUID().toString();
+          message.invisibleUntil = System.currentTimeMillis() + visibilityTimeoutMillis;
+          inFlight.put(message.receiptHandle, message);
+          messages.add(new Message().withMessageId(message.id).withReceiptHandle(message.receiptHandle)
+              .withBody(message.body));
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if(!messages.isEmpty() || remaining <= 0) {
+          break;
+        }
+        wait(Math.min(remaining, 100));
+      }
+    } catch(InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    return new ReceiveMessageResult().withMessages(messages);
+  }
+
+  @Override
+  public synchronized DeleteMessageResult deleteMessage(DeleteMessageRequest request) {
+    delete(request.getReceiptHandle());
+    return new DeleteMessageResult();
+  }
+
+  @Override
+  public synchronized DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+    DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+    for(DeleteMessageBatchRequestEntry entry: request.getEntries()) {
+      if(delete(entry.getReceiptHandle())) {
+        result.getSuccessful().add(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+      } else {
+        result.getFailed().add(new BatchResultErrorEntry().withId(entry.getId())
+            .withCode("ReceiptHandleIsInvalid").withSenderFault(true));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public synchronized ChangeMessageVisibilityResult changeMessageVisibility(ChangeMessageVisibilityRequest request) {
+    StoredMessage message = inFlight.get(request.getReceiptHandle());
+    if(message != null) {
+      message.invisibleUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(request.getVisibilityTimeout());
+    }
+    return new ChangeMessageVisibilityResult();
+  }
+
+  @Override
+  public void shutdown() {
+  }
+
+  /**
+   * Whether every message sent so far has been deleted.
+   */
+  public synchronized boolean isDrained() {
+    return visible.isEmpty() && inFlight.isEmpty();
+  }
+
+  public synchronized long getSent() {
+    return sent;
+  }
+
+  public synchronized long getDeleted() {
+    return deleted;
+  }
+
+  public synchronized long getRedelivered() {
+    return redelivered;
+  }
+
+  private boolean delete(String receiptHandle) {
+    StoredMessage message = inFlight.remove(receiptHandle);
+    if(message == null) {
+      return false;
+    }
+    deleted++;
+    applyLatency.record(System.nanoTime() - message.sentAt);
+    return true;
+  }
+
+  private void requeueExpired() {
+    long now = System.currentTimeMillis();
+    Iterator<StoredMessage> messages = inFlight.values().iterator();
+    while(messages.hasNext()) {
+      StoredMessage message = messages.next();
+      if(message.invisibleUntil <= now) {
+        messages.remove();
+        visible.add(message);
+        redelivered++;
+      }
+    }
+  }
+
+  private static class StoredMessage {
+
+    private final String id;
+    private final String body;
+    private final long sentAt;
+    private String receiptHandle;
+    private long invisibleUntil;
+
+    private StoredMessage(String id, String body, long sentAt) {
+      this.id = id;
+      this.body = body;
+      this.sentAt = sentAt;
+    }
+
+  }
+
+}
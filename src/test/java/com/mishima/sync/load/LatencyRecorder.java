@@ -0,0 +1,38 @@
+package com.mishima.sync.load;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps every recorded latency so exact percentiles can be reported at the end of a run.
+ */
+public class LatencyRecorder {
+
+  private long[] samples = new long[1024];
+  private int count;
+
+  public synchronized void record(long nanos) {
+    if(count == samples.length) {
+      samples = Arrays.copyOf(samples, count * 2);
+    }
+    samples[count++] = nanos;
+  }
+
+  public synchronized int getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the given percentile, between 0 and 100, in milliseconds.
+   */
+  public synchronized double percentileMillis(double percentile) {
+    if(count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int index = (int)Math.min(count - 1, Math.ceil(percentile / 100 * count) - 1);
+    return sorted[Math.max(0, index)] / (double)TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+}
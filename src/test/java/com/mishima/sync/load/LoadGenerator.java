@@ -0,0 +1,223 @@
+package com.mishima.sync.load;
+
+import static com.mishima.sync.util.OdsSchemaUtils.mapToOdsTableDefinition;
+
+import com.google.gson.Gson;
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.SalesforceFieldDefinition;
+import com.mishima.sync.model.SalesforceObjectDescribe;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Produces message bodies for a {@link LoadProfile}: bulk-load messages of creates, interactive
+ * messages mixing creates, updates and deletes of live records, a share of updates and deletes
+ * concentrated on hot records, and occasional duplicate deliveries of earlier messages.
+ */
+public class LoadGenerator {
+
+  private static final String[] FIELD_TYPES = {"string", "double", "boolean", "datetime", "date", "picklist", "textarea"};
+  private static final int RECENT_MESSAGES = 100;
+
+  private final LoadProfile profile;
+  private final Random random;
+  private final Gson gson = new Gson();
+  private final List<SalesforceObjectDescribe> describes = new ArrayList<>();
+  private final List<List<String>> liveIds = new ArrayList<>();
+  private final List<List<String>> hotIds = new ArrayList<>();
+  private final List<String> recentMessages = new ArrayList<>();
+
+  private long nextId;
+  private int generated;
+
+  public LoadGenerator(LoadProfile profile) {
+    this.profile = profile;
+    this.random = new Random(profile.getSeed());
+    for(int i = 1; i <= profile.getObjectTypes(); i++) {
+      describes.add(describe("Load_Object_" + i + "__c", profile.getFields()));
+      liveIds.add(new ArrayList<>());
+      hotIds.add(new ArrayList<>());
+    }
+  }
+
+  /**
+   * DDL for the ODS tables of the generated object types.
+   */
+  public List<String> getTableDdl() {
+    List<String> ddl = new ArrayList<>();
+    describes.forEach(describe -> ddl.add(mapToOdsTableDefinition(describe).generateDDL()));
+    return ddl;
+  }
+
+  public boolean hasNext() {
+    return generated < profile.getEvents();
+  }
+
+  public GeneratedMessage next() {
+    if(!recentMessages.isEmpty() && random.nextDouble() < profile.getDuplicateFraction()) {
+      return new GeneratedMessage(recentMessages.get(random.nextInt(recentMessages.size())), 0);
+    }
+    int objectType = random.nextInt(describes.size());
+    List<ChangeCaptureEvent> events = new ArrayList<>();
+    if(random.nextDouble() < batchMessageProbability()) {
+      for(int i = 0; i < profile.getBatchSize() && generated + events.size() < profile.getEvents(); i++) {
+        events.add(create(objectType, "batch"));
+      }
+    } else {
+      for(int i = 0; i < profile.getEventsPerMessage() && generated + events.size() < profile.getEvents(); i++) {
+        events.add(interactive(objectType));
+      }
+    }
+    generated += events.size();
+    String body = gson.toJson(events);
+    if(recentMessages.size() < RECENT_MESSAGES) {
+      recentMessages.add(body);
+    } else {
+      recentMessages.set(random.nextInt(RECENT_MESSAGES), body);
+    }
+    return new GeneratedMessage(body, events.size());
+  }
+
+  // Chance of a message being a bulk load such that the requested share of events are bulk loaded
+  private double batchMessageProbability() {
+    double batchEvents = profile.getBatchFraction() * profile.getEventsPerMessage();
+    return batchEvents / (batchEvents + (1 - profile.getBatchFraction()) * profile.getBatchSize());
+  }
+
+  private ChangeCaptureEvent interactive(int objectType) {
+    double total = profile.getCreateWeight() + profile.getUpdateWeight() + profile.getDeleteWeight();
+    double choice = random.nextDouble() * total;
+    if(liveIds.get(objectType).isEmpty() || choice < profile.getCreateWeight()) {
+      return create(objectType, "user@example.com");
+    }
+    String objectId = pick(objectType);
+    if(choice < profile.getCreateWeight() + profile.getUpdateWeight()) {
+      return event(objectType, "U", "user@example.com", objectId);
+    }
+    liveIds.get(objectType).remove(objectId);
+    hotIds.get(objectType).remove(objectId);
+    return event(objectType, "D", "user@example.com", objectId);
+  }
+
+  private ChangeCaptureEvent create(int objectType, String userName) {
+    String objectId = String.format("a0%d%015d", objectType, ++nextId);
+    liveIds.get(objectType).add(objectId);
+    if(hotIds.get(objectType).size() < profile.getHotspotSize()) {
+      hotIds.get(objectType).add(objectId);
+    }
+    return event(objectType, "C", userName, objectId);
+  }
+
+  private String pick(int objectType) {
+    List<String> candidates = !hotIds.get(objectType).isEmpty() && random.nextDouble() < profile.getHotspotFraction()
+        ? hotIds.get(objectType): liveIds.get(objectType);
+    return candidates.get(random.nextInt(candidates.size()));
+  }
+
+  private ChangeCaptureEvent event(int objectType, String action, String userName, String objectId) {
+    SalesforceObjectDescribe describe = describes.get(objectType);
+    Map<String,Object> payload = "D".equals(action)? null: payload(describe, objectId);
+    Map<String,Object> changed = null;
+    if("U".equals(action)) {
+      // Roughly one field in ten changes per update
+      changed = new LinkedHashMap<>();
+      for(Map.Entry<String,Object> field: payload.entrySet()) {
+        if(!"id".equals(field.getKey()) && random.nextInt(10) == 0) {
+          changed.put(field.getKey(), field.getValue());
+        }
+      }
+    }
+    return ChangeCaptureEvent.builder()
+        .userName(userName)
+        .action(action)
+        .objectId(objectId)
+        .objectType(describe.getName())
+        .objectName("Load test " + objectId)
+        .createdTime(new Date())
+        .newFieldValues(changed)
+        .fullPayload(payload)
+        .build();
+  }
+
+  // Payload keys are the lower case field names, as published by the change capture trigger
+  private Map<String,Object> payload(SalesforceObjectDescribe describe, String objectId) {
+    Map<String,Object> payload = new LinkedHashMap<>();
+    for(SalesforceFieldDefinition field: describe.getFields()) {
+      String name = field.getName().toLowerCase();
+      switch(field.getType()) {
+        case "id":
+          payload.put(name, objectId);
+          break;
+        case "double":
+          payload.put(name, Math.round(random.nextDouble() * 1000000) / 100.0);
+          break;
+        case "boolean":
+          payload.put(name, random.nextBoolean());
+          break;
+        case "datetime":
+          payload.put(name, Instant.now().truncatedTo(ChronoUnit.MILLIS).toString());
+          break;
+        case "date":
+          payload.put(name, "2020-08-" + (10 + random.nextInt(20)));
+          break;
+        case "textarea":
+          payload.put(name, field.getLength() > 4000? String.join(" ", Collections.nCopies(200, "Lorem ipsum")):
+              "Notes " + random.nextInt(100000));
+          break;
+        default:
+          payload.put(name, "Value " + random.nextInt(100000));
+      }
+    }
+    return payload;
+  }
+
+  private static SalesforceObjectDescribe describe(String objectType, int fieldCount) {
+    List<SalesforceFieldDefinition> fields = new ArrayList<>();
+    fields.add(field("Id", "id", 18));
+    for(int i = 1; i < fieldCount; i++) {
+      String type = FIELD_TYPES[i % FIELD_TYPES.length];
+      // Every tenth field has a name too long for an Oracle column, and a few text areas are CLOBs
+      String name = i % 10 == 0? "F" + i + "_Long_Descriptive_Field_Name__c": "Field_" + i + "__c";
+      fields.add(field(name, type, "textarea".equals(type) && i % 5 == 0? 32768: 255));
+    }
+    return SalesforceObjectDescribe.builder().name(objectType).fields(fields).build();
+  }
+
+  private static SalesforceFieldDefinition field(String name, String type, long length) {
+    SalesforceFieldDefinition field = new SalesforceFieldDefinition();
+    field.setName(name);
+    field.setType(type);
+    field.setLength(length);
+    field.setByteLength(length);
+    return field;
+  }
+
+  public static class GeneratedMessage {
+
+    private final String body;
+    private final int events;
+
+    private GeneratedMessage(String body, int events) {
+      this.body = body;
+      this.events = events;
+    }
+
+    public String getBody() {
+      return body;
+    }
+
+    // Number of new events in the message, zero for a duplicate delivery
+    public int getEvents() {
+      return events;
+    }
+
+  }
+
+}
@@ -0,0 +1,47 @@
+package com.mishima.sync.load;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Shape of the load generated for a run, read from {@code sync.load.*} system properties.
+ */
+@Getter
+@ToString
+public class LoadProfile {
+
+  // Total number of change events to publish
+  private final int events = Integer.getInteger("sync.load.events", 20000);
+
+  // Target publish rate in events per second, 0 publishes as fast as the queue accepts
+  private final int rate = Integer.getInteger("sync.load.rate", 0);
+
+  private final int objectTypes = Integer.getInteger("sync.load.object-types", 2);
+  private final int fields = Integer.getInteger("sync.load.fields", 100);
+
+  // Relative weights of creates, updates and deletes in interactive messages
+  private final double createWeight = doubleProperty("sync.load.mix.create", 0.3);
+  private final double updateWeight = doubleProperty("sync.load.mix.update", 0.6);
+  private final double deleteWeight = doubleProperty("sync.load.mix.delete", 0.1);
+
+  // Share of events published as bulk-load messages of batch-size creates
+  private final double batchFraction = doubleProperty("sync.load.batch-fraction", 0.2);
+  private final int batchSize = Integer.getInteger("sync.load.batch-size", 200);
+  private final int eventsPerMessage = Integer.getInteger("sync.load.events-per-message", 1);
+
+  // Share of updates and deletes aimed at a small set of hot records
+  private final double hotspotFraction = doubleProperty("sync.load.hotspot-fraction", 0.2);
+  private final int hotspotSize = Integer.getInteger("sync.load.hotspot-size", 50);
+
+  // Share of messages published a second time
+  private final double duplicateFraction = doubleProperty("sync.load.duplicate-fraction", 0.01);
+
+  private final long seed = Long.getLong("sync.load.seed", 42);
+  private final int timeoutSeconds = Integer.getInteger("sync.load.timeout-seconds", 600);
+
+  private static double doubleProperty(String name, double defaultValue) {
+    String value = System.getProperty(name);
+    return value == null? defaultValue: Double.parseDouble(value);
+  }
+
+}
@@ -0,0 +1,168 @@
+package com.mishima.sync.load;
+
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.mishima.sync.SyncApplication;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+/**
+ * Drives the real consumer and repository with generated load, using an in-memory queue in place
+ * of SQS and H2 in Oracle mode in place of the ODS. Reports throughput, apply latency measured from
+ * publishing a message to its deletion, and heap usage.
+ *
+ * <p>Skipped unless run with {@code -Dsync.load-test=true}, for example
+ * {@code mvn test -Dtest=LoadTestHarness -Dsync.load-test=true -Dsync.load.events=100000}. The load
+ * is shaped with the {@code sync.load.*} properties in {@link LoadProfile}, and any {@code sync.*}
+ * application setting can be overridden the same way.
+ */
+@Slf4j
+public class LoadTestHarness {
+
+  // Must match spring.datasource.url in application-loadtest.properties
+  private static final String DB_URL = "jdbc:h2:mem:loadtest;MODE=Oracle;DB_CLOSE_DELAY=-1";
+
+  // The schema registry reads Oracle's dictionary views, so they are stood up over H2's information schema
+  private static final String[] DICTIONARY_VIEWS = {
+      "CREATE VIEW all_tables AS SELECT USER() owner, table_name FROM information_schema.tables "
+          + "WHERE table_schema = 'PUBLIC' AND table_type = 'TABLE'",
+      "CREATE VIEW all_tab_cols AS SELECT table_name, column_name, "
+          + "CASE type_name WHEN 'DECIMAL' THEN 'NUMBER' ELSE type_name END data_type "
+          + "FROM information_schema.columns WHERE table_schema = 'PUBLIC'"
+  };
+
+  @Test
+  public void runLoad() throws Exception {
+    Assume.assumeTrue("Load test disabled, run with -Dsync.load-test=true", Boolean.getBoolean("sync.load-test"));
+    LoadProfile profile = new LoadProfile();
+    log.info("Running load {}", profile);
+    LoadGenerator generator = new LoadGenerator(profile);
+    seedDatabase(generator);
+
+    LatencyRecorder applyLatency = new LatencyRecorder();
+    InMemoryAmazonSQS amazonSQS = new InMemoryAmazonSQS(TimeUnit.SECONDS.toMillis(30), applyLatency);
+    HeapSampler heapSampler = new HeapSampler();
+
+    try(ConfigurableApplicationContext context = startApplication(amazonSQS)) {
+      heapSampler.start();
+      long start = System.nanoTime();
+      long events = publish(generator, amazonSQS, profile);
+      long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(profile.getTimeoutSeconds());
+      while(!amazonSQS.isDrained() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+      long elapsedNanos = System.nanoTime() - start;
+      heapSampler.stop();
+      assertTrue("Queue not drained within " + profile.getTimeoutSeconds() + "s", amazonSQS.isDrained());
+
+      double seconds = elapsedNanos / 1e9;
+      log.info("Applied {} events in {} messages over {}s: {} events/s", events, amazonSQS.getDeleted(),
+          String.format("%.1f", seconds), String.format("%.0f", events / seconds));
+      log.info("Apply latency p50 {}ms, p99 {}ms, p999 {}ms, max {}ms",
+          String.format("%.1f", applyLatency.percentileMillis(50)),
+          String.format("%.1f", applyLatency.percentileMillis(99)),
+          String.format("%.1f", applyLatency.percentileMillis(99.9)),
+          String.format("%.1f", applyLatency.percentileMillis(100)));
+      log.info("Redelivered messages {}", amazonSQS.getRedelivered());
+      heapSampler.report();
+    }
+  }
+
+  private void seedDatabase(LoadGenerator generator) throws Exception {
+    try(Connection connection = DriverManager.getConnection(DB_URL, "SA", "");
+        Statement statement = connection.createStatement()) {
+      for(String ddl: generator.getTableDdl()) {
+        statement.execute(ddl.replace(";", ""));
+      }
+      for(String view: DICTIONARY_VIEWS) {
+        statement.execute(view);
+      }
+    }
+  }
+
+  private ConfigurableApplicationContext startApplication(InMemoryAmazonSQS amazonSQS) {
+    ApplicationContextInitializer<GenericApplicationContext> sqsStandIn = context ->
+        context.registerBean("loadTestAmazonSQS", AmazonSQS.class, () -> amazonSQS,
+            definition -> definition.setPrimary(true));
+    return new SpringApplicationBuilder(SyncApplication.class)
+        .web(WebApplicationType.NONE)
+        .profiles("cloud", "loadtest")
+        .initializers(sqsStandIn)
+        .run();
+  }
+
+  private long publish(LoadGenerator generator, InMemoryAmazonSQS amazonSQS, LoadProfile profile) throws InterruptedException {
+    long events = 0;
+    long start = System.nanoTime();
+    while(generator.hasNext()) {
+      LoadGenerator.GeneratedMessage message = generator.next();
+      amazonSQS.sendMessage("loadtest", message.getBody());
+      events += message.getEvents();
+      if(profile.getRate() > 0) {
+        long dueNanos = start + TimeUnit.SECONDS.toNanos(events) / profile.getRate();
+        long waitNanos = dueNanos - System.nanoTime();
+        if(waitNanos > 0) {
+          TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+      }
+    }
+    log.info("Published {} events in {} messages", events, amazonSQS.getSent());
+    return events;
+  }
+
+  private static class HeapSampler {
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong maxUsed = new AtomicLong();
+    private long gcCountBefore;
+    private long gcTimeBefore;
+    private long gcCount;
+    private long gcTime;
+
+    private void start() {
+      gcCountBefore = totalGcCount();
+      gcTimeBefore = totalGcTime();
+      scheduler.scheduleAtFixedRate(() -> maxUsed.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+          0, 100, TimeUnit.MILLISECONDS);
+    }
+
+    private void stop() {
+      scheduler.shutdownNow();
+      gcCount = totalGcCount() - gcCountBefore;
+      gcTime = totalGcTime() - gcTimeBefore;
+    }
+
+    private void report() {
+      log.info("Heap max used {}MB of {}MB, {} collections taking {}ms", maxUsed.get() >> 20,
+          memory.getHeapMemoryUsage().getMax() >> 20, gcCount, gcTime);
+    }
+
+    private static long totalGcCount() {
+      return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long totalGcTime() {
+      return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+  }
+
+}
@@ -0,0 +1,79 @@
+package com.mishima.sync.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class AdaptiveLimiterTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  private final AdaptiveLimiter limiter = new AdaptiveLimiter(true, 1, 8, 50, 500, 50, 100, 0.5, 1000, now::get);
+
+  @Test
+  public void testSlowWritesHalveLimitsOncePerCooldown() throws Exception {
+    write(TimeUnit.MILLISECONDS.toNanos(400), null);
+    assertEquals(4, limiter.getConcurrencyLimit());
+    assertEquals(250, limiter.getBatchSize());
+    // Writes already in flight report the same latency within the cooldown
+    write(TimeUnit.MILLISECONDS.toNanos(400), null);
+    assertEquals(4, limiter.getConcurrencyLimit());
+    now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+    write(TimeUnit.MILLISECONDS.toNanos(400), null);
+    assertEquals(2, limiter.getConcurrencyLimit());
+    assertEquals(0.25, limiter.getThrottle(), 0.001);
+  }
+
+  @Test
+  public void testFastWritesGrowLimitsBackToMaximum() throws Exception {
+    write(TimeUnit.MILLISECONDS.toNanos(400), null);
+    assertEquals(4, limiter.getConcurrencyLimit());
+    for(int i = 0; i < 200; i++) {
+      write(TimeUnit.MILLISECONDS.toNanos(10), null);
+    }
+    assertEquals(8, limiter.getConcurrencyLimit());
+    assertEquals(500, limiter.getBatchSize());
+  }
+
+  @Test
+  public void testOnlyOverloadErrorsBackOff() throws Exception {
+    write(TimeUnit.MILLISECONDS.toNanos(10), new IllegalStateException("constraint violated"));
+    assertEquals(8, limiter.getConcurrencyLimit());
+    write(TimeUnit.MILLISECONDS.toNanos(10), new RuntimeException(new SQLException("ORA-00060: deadlock detected", "61000", 60)));
+    assertEquals(4, limiter.getConcurrencyLimit());
+    assertTrue(AdaptiveLimiter.isOverload(new SQLTransientConnectionException("Connection is not available")));
+    assertFalse(AdaptiveLimiter.isOverload(new SQLException("ORA-00001: unique constraint violated", "23000", 1)));
+  }
+
+  @Test
+  public void testSingleRowLatencyIsNotAveragedWithBatches() throws Exception {
+    for(int i = 0; i < 5; i++) {
+      write(TimeUnit.MILLISECONDS.toNanos(10), 500, null);
+      write(TimeUnit.MILLISECONDS.toNanos(150), 1, null);
+    }
+    assertEquals(4, limiter.getConcurrencyLimit());
+    assertEquals(150, limiter.getSmoothedLatencyMillis(), 0.001);
+  }
+
+  @Test
+  public void testMinimumBatchSizeIsLoweredToMaximum() {
+    AdaptiveLimiter small = new AdaptiveLimiter(false, 1, 4, 50, 20, 50, 100, 0.5, 1000, now::get);
+    assertEquals(20, small.getBatchSize());
+  }
+
+  private void write(long latencyNanos, Exception error) throws InterruptedException {
+    write(latencyNanos, 1, error);
+  }
+
+  private void write(long latencyNanos, int rows, Exception error) throws InterruptedException {
+    limiter.acquire();
+    limiter.release(latencyNanos, rows, error);
+  }
+
+}
@@ -0,0 +1,110 @@
+package com.mishima.sync.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.ColumnMetadata;
+import com.mishima.sync.model.ColumnType;
+import com.mishima.sync.model.OdsRow;
+import com.mishima.sync.model.TableMetadata;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+public class EventCoalescerTest {
+
+  private final List<ChangeCaptureEvent> applied = new ArrayList<>();
+  private final EventCoalescer<String> coalescer = new EventCoalescer<>(60000, 3, (e, context) -> {
+    applied.add(e);
+    return CompletableFuture.completedFuture(null);
+  });
+
+  @Test
+  public void testCreateThenUpdateBecomesCreate() {
+    CompletableFuture<Void> create = coalescer.submit(event("C", "1", "Name", "first"), "m1");
+    CompletableFuture<Void> update = coalescer.submit(event("U", "1", "Name", "second"), "m2");
+    coalescer.flush();
+    assertEquals(1, applied.size());
+    assertEquals("C", applied.get(0).getAction());
+    assertEquals("second", applied.get(0).getFullPayload().get("Name"));
+    assertTrue(create.isDone() && update.isDone());
+    assertEquals(1, coalescer.getFolded());
+  }
+
+  @Test
+  public void testCreateThenUpdateKeepsFieldsOnlyTheCreateSet() {
+    TableMetadata table = new TableMetadata("invoice__c", new TreeSet<>(List.of(
+        ColumnMetadata.builder().columnName("id").dataType("varchar2").columnType(ColumnType.TEXT).build(),
+        ColumnMetadata.builder().columnName("name").dataType("varchar2").columnType(ColumnType.TEXT).build(),
+        ColumnMetadata.builder().columnName("status__c").dataType("varchar2").columnType(ColumnType.TEXT).build())));
+    OdsRow created = new OdsRow(table);
+    created.getValues()[table.indexOf("name")] = "first";
+    created.getValues()[table.indexOf("status__c")] = "Open";
+    OdsRow updated = new OdsRow(table);
+    updated.getValues()[table.indexOf("name")] = "second";
+    coalescer.submit(event("C", "1", created), "m1");
+    coalescer.submit(event("U", "1", updated), "m2");
+    coalescer.flush();
+    Object[] values = applied.get(0).getRow().getValues();
+    assertEquals("second", values[table.indexOf("name")]);
+    assertEquals("Open", values[table.indexOf("status__c")]);
+  }
+
+  @Test
+  public void testCreateThenDeleteIsDropped() {
+    CompletableFuture<Void> create = coalescer.submit(event("C", "1", "Name", "first"), "m1");
+    coalescer.submit(event("D", "1", "Name", "first"), "m2");
+    coalescer.flush();
+    assertTrue(applied.isEmpty());
+    assertTrue(create.isDone());
+    assertEquals(1, coalescer.getCancelled());
+  }
+
+  @Test
+  public void testUpdateThenDeleteBecomesDelete() {
+    coalescer.submit(event("U", "1", "Name", "first"), "m1");
+    coalescer.submit(event("U", "1", "Name", "second"), "m1");
+    coalescer.submit(event("D", "1", "Name", "second"), "m2");
+    coalescer.submit(event("U", "2", "Name", "other"), "m2");
+    assertTrue(applied.isEmpty());
+    coalescer.flush();
+    assertEquals(2, applied.size());
+    assertEquals("D", applied.get(0).getAction());
+    assertEquals("2", applied.get(1).getObjectId());
+    assertEquals(4, coalescer.getReceived());
+    assertEquals(2, coalescer.getEmitted());
+  }
+
+  @Test
+  public void testFullBufferFlushesOnSubmit() {
+    coalescer.submit(event("U", "1", "Name", "first"), "m1");
+    coalescer.submit(event("U", "2", "Name", "first"), "m1");
+    assertTrue(applied.isEmpty());
+    CompletableFuture<Void> third = coalescer.submit(event("U", "3", "Name", "first"), "m1");
+    assertEquals(3, applied.size());
+    assertTrue(third.isDone());
+  }
+
+  private ChangeCaptureEvent event(String action, String objectId, OdsRow row) {
+    return ChangeCaptureEvent.builder()
+        .action(action)
+        .objectId(objectId)
+        .objectType("Invoice__c")
+        .row(row)
+        .build();
+  }
+
+  private ChangeCaptureEvent event(String action, String objectId, String field, Object value) {
+    return ChangeCaptureEvent.builder()
+        .action(action)
+        .objectId(objectId)
+        .objectType("Invoice__c")
+        .fullPayload(Collections.singletonMap(field, value))
+        .build();
+  }
+
+}
@@ -0,0 +1,171 @@
+package com.mishima.sync.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.SmartTransactionObject;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class PartitionedExecutorTest {
+
+  @Test
+  public void testTasksForSameKeyRunInSubmissionOrder() throws Exception {
+    PartitionedExecutor executor = new PartitionedExecutor("test", 4, 10);
+    List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    for(int i = 0; i < 100; i++) {
+      int sequence = i;
+      futures.add(executor.submit("a0B000000000001", () -> applied.add(sequence)));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    executor.shutdown();
+    for(int i = 0; i < 100; i++) {
+      assertEquals(i, (int)applied.get(i));
+    }
+  }
+
+  @Test
+  public void testFailedTaskCompletesFutureExceptionally() throws Exception {
+    PartitionedExecutor executor = new PartitionedExecutor("test", 2, 10);
+    CompletableFuture<Void> future = executor.submit("key", () -> {
+      throw new IllegalStateException("failed");
+    });
+    try {
+      future.get(10, TimeUnit.SECONDS);
+    } catch(Exception ex) {
+      assertEquals(IllegalStateException.class, ex.getCause().getClass());
+    }
+    assertEquals(true, future.isCompletedExceptionally());
+    executor.shutdown();
+  }
+
+  @Test
+  public void testTasksWithinWindowShareOneCommit() throws Exception {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    PartitionedExecutor executor = new PartitionedExecutor("test", 1, 20, new TransactionTemplate(transactionManager), 10, 5000);
+    CountDownLatch queued = new CountDownLatch(1);
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    futures.add(executor.submitToPartition(0, () -> await(queued)));
+    for(int i = 1; i < 10; i++) {
+      futures.add(executor.submitToPartition(0, () -> {}));
+    }
+    queued.countDown();
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    executor.shutdown();
+    assertEquals(1, transactionManager.commits.get());
+    assertEquals(0, transactionManager.rollbacks.get());
+    assertEquals(1, executor.getGroupsCommitted());
+  }
+
+  @Test
+  public void testTaskDoomingGroupIsIsolated() throws Exception {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    PartitionedExecutor executor = new PartitionedExecutor("test", 1, 20, new TransactionTemplate(transactionManager), 4, 5000);
+    CountDownLatch queued = new CountDownLatch(1);
+    List<CompletableFuture<Void>> futures = new ArrayList<>();
+    futures.add(executor.submitToPartition(0, () -> await(queued)));
+    futures.add(executor.submitToPartition(0, () -> {}));
+    futures.add(executor.submitToPartition(0, () -> {
+      transactionManager.rollbackOnly.set(true);
+      throw new IllegalStateException("constraint violated");
+    }));
+    futures.add(executor.submitToPartition(0, () -> {}));
+    queued.countDown();
+    try {
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    } catch(Exception ex) {
+      assertEquals(IllegalStateException.class, ex.getCause().getClass());
+    }
+    executor.shutdown();
+    assertTrue(futures.get(2).isCompletedExceptionally());
+    for(int i: new int[] {0, 1, 3}) {
+      assertTrue(futures.get(i).isDone() && !futures.get(i).isCompletedExceptionally());
+    }
+    // The group ends at the failing task: it, the half holding it and the task alone roll back, while
+    // the first two tasks commit on their own and the last one in the next group
+    assertEquals(3, transactionManager.rollbacks.get());
+    assertEquals(3, transactionManager.commits.get());
+    assertEquals(2, executor.getGroupsSplit());
+  }
+
+  @Test
+  public void testLimiterLatencyLeavesOutGroupWindow() throws Exception {
+    List<long[]> releases = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch released = new CountDownLatch(1);
+    AdaptiveLimiter limiter = new AdaptiveLimiter(true, 1, 4, 1, 10, 1, 100, 0.5, 1000, System::nanoTime) {
+      @Override
+      public synchronized void release(long latencyNanos, int rows, Throwable error) {
+        releases.add(new long[] {latencyNanos, rows});
+        super.release(latencyNanos, rows, error);
+        released.countDown();
+      }
+    };
+    PartitionedExecutor executor = new PartitionedExecutor("test", 1, 20,
+        new TransactionTemplate(new RecordingTransactionManager()), 10, 300, limiter);
+    executor.submitToPartition(0, () -> {}, 3).get(10, TimeUnit.SECONDS);
+    assertTrue(released.await(10, TimeUnit.SECONDS));
+    executor.shutdown();
+    assertEquals(1, releases.size());
+    // The group waited out its window for more tasks, which is not write latency
+    assertTrue(releases.get(0)[0] < TimeUnit.MILLISECONDS.toNanos(100));
+    assertEquals(3, releases.get(0)[1]);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch(InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Counts commits and rollbacks, and lets a task mark the transaction rollback-only as a participating one would
+  private static class RecordingTransactionManager extends AbstractPlatformTransactionManager {
+
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger rollbacks = new AtomicInteger();
+    private final ThreadLocal<Boolean> rollbackOnly = ThreadLocal.withInitial(() -> false);
+
+    @Override
+    protected Object doGetTransaction() {
+      return (SmartTransactionObject)new SmartTransactionObject() {
+        @Override
+        public boolean isRollbackOnly() {
+          return rollbackOnly.get();
+        }
+
+        @Override
+        public void flush() {
+        }
+      };
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+      rollbackOnly.set(false);
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+      commits.incrementAndGet();
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+      rollbacks.incrementAndGet();
+    }
+
+  }
+
+}
@@ -0,0 +1,49 @@
+package com.mishima.sync.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class RetrySchedulerTest {
+
+  @Test
+  public void testDelayGrowsExponentiallyWithinCap() {
+    RetryScheduler scheduler = new RetryScheduler("test", 100, 1000, 5);
+    for(int i = 0; i < 100; i++) {
+      long first = scheduler.delayFor(1);
+      assertTrue(first >= 50 && first <= 100);
+      long third = scheduler.delayFor(3);
+      assertTrue(third >= 200 && third <= 400);
+      long capped = scheduler.delayFor(10);
+      assertTrue(capped >= 500 && capped <= 1000);
+    }
+    assertTrue(scheduler.canRetry(4));
+    assertFalse(scheduler.canRetry(5));
+  }
+
+  @Test
+  public void testScheduledTaskRunsAfterDelay() throws Exception {
+    RetryScheduler scheduler = new RetryScheduler("test", 100, 1000, 5);
+    scheduler.start();
+    long start = System.nanoTime();
+    CompletableFuture<String> result = scheduler.schedule(200, () -> CompletableFuture.completedFuture("done"));
+    assertEquals("done", result.get(10, TimeUnit.SECONDS));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+    scheduler.stop();
+  }
+
+  @Test
+  public void testStopCancelsPendingRetries() throws Exception {
+    RetryScheduler scheduler = new RetryScheduler("test", 100, 1000, 5);
+    scheduler.start();
+    CompletableFuture<String> result = scheduler.schedule(60000, () -> CompletableFuture.completedFuture("done"));
+    scheduler.stop();
+    assertTrue(result.isCompletedExceptionally());
+    assertEquals(0, scheduler.getPending());
+  }
+
+}
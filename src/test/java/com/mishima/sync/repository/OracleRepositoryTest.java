@@ -0,0 +1,169 @@
+package com.mishima.sync.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.mishima.sync.metrics.SyncMetrics;
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.ColumnMetadata;
+import com.mishima.sync.model.ColumnType;
+import com.mishima.sync.model.TableMetadata;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import javax.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class OracleRepositoryTest {
+
+  private final OracleRepository repository = new OracleRepository();
+
+  private final TableMetadata table = new TableMetadata("account__c", new TreeSet<>(List.of(
+      column("id", "varchar2", ColumnType.TEXT),
+      column("name", "varchar2", ColumnType.TEXT),
+      column("ods_version", "number", ColumnType.NUMBER))));
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:;MODE=Oracle");
+    try(Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE account__c (id VARCHAR2(18) PRIMARY KEY, name VARCHAR2(255), ods_version NUMBER)");
+    }
+    Session session = mock(Session.class);
+    when(session.doReturningWork(any())).thenAnswer(invocation ->
+        invocation.<ReturningWork<?>>getArgument(0).execute(connection));
+    EntityManager entityManager = mock(EntityManager.class);
+    when(entityManager.unwrap(Session.class)).thenReturn(session);
+    OracleSchemaRegistry oracleSchemaRegistry = mock(OracleSchemaRegistry.class);
+    when(oracleSchemaRegistry.getTable(anyString())).thenReturn(table);
+    ReflectionTestUtils.setField(repository, "entityManager", entityManager);
+    ReflectionTestUtils.setField(repository, "oracleSchemaRegistry", oracleSchemaRegistry);
+    ReflectionTestUtils.setField(repository, "syncMetrics", mock(SyncMetrics.class));
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void testGuardedUpdateAppliesNewerVersion() throws SQLException {
+    insert("Old", 1000L);
+    assertEquals(1, repository.doUpdate(event(2000L)));
+    assertRow("Acme", 2000L);
+  }
+
+  @Test
+  public void testGuardedUpdateTreatsDuplicateAsApplied() throws SQLException {
+    insert("Old", 1000L);
+    assertEquals(1, repository.doUpdate(event(1000L)));
+    assertRow("Old", 1000L);
+  }
+
+  @Test
+  public void testGuardedUpdateTreatsStaleChangeAsApplied() throws SQLException {
+    insert("Newer", 3000L);
+    assertEquals(1, repository.doUpdate(event(2000L)));
+    assertRow("Newer", 3000L);
+  }
+
+  @Test
+  public void testGuardedUpdateReportsMissingRow() {
+    assertEquals(0, repository.doUpdate(event(2000L)));
+  }
+
+  @Test
+  public void testUpdateOnlyAppliesToOlderVersions() {
+    Object[] values = repository.convertPayload(table, event(1000L));
+    assertEquals(BigDecimal.valueOf(1000L), values[table.indexOf("ods_version")]);
+    StatementPlan plan = repository.buildStatementPlan(table, StatementType.UPDATE,
+        repository.boundColumns(table, StatementType.UPDATE, values), new BitSet());
+    assertTrue(plan.getSql().endsWith("WHERE id = ? AND (ods_version IS NULL OR ods_version < ?)"));
+    assertEquals(table.indexOf("ods_version"), plan.getVersionColumn());
+  }
+
+  @Test
+  public void testMergeOnlyOverwritesOlderVersions() {
+    Object[] values = repository.convertPayload(table, event(1000L));
+    StatementPlan plan = repository.buildStatementPlan(table, StatementType.MERGE,
+        repository.boundColumns(table, StatementType.MERGE, values), new BitSet());
+    assertTrue(plan.getSql().contains("WHERE t.ods_version IS NULL OR t.ods_version < s.ods_version WHEN NOT MATCHED"));
+    assertEquals(-1, plan.getVersionColumn());
+  }
+
+  @Test
+  public void testMergeBindsClobsOutsideSourceRow() {
+    TableMetadata notes = new TableMetadata("note__c", new TreeSet<>(List.of(
+        column("id", "varchar2", ColumnType.TEXT),
+        column("body", "clob", ColumnType.CLOB),
+        column("name", "varchar2", ColumnType.TEXT))));
+    Object[] values = {"a0B000000000001", "Acme", "long text"};
+    StatementPlan plan = repository.buildStatementPlan(notes, StatementType.MERGE,
+        repository.boundColumns(notes, StatementType.MERGE, values), new BitSet());
+    assertEquals("MERGE INTO note__c t USING (SELECT ? id, ? name FROM dual) s ON (t.id = s.id)"
+        + " WHEN MATCHED THEN UPDATE SET t.name = s.name, t.body = ?"
+        + " WHEN NOT MATCHED THEN INSERT (id, name, body) VALUES (s.id, s.name, ?)", plan.getSql());
+    assertTrue(plan.isObjectIdFirst());
+    assertArrayEquals(new int[] {notes.indexOf("name"), notes.indexOf("body"), notes.indexOf("body")},
+        plan.getParameterColumns());
+  }
+
+  @Test
+  public void testEventWithoutTimeIsNotGuarded() {
+    Object[] values = repository.convertPayload(table, event(null));
+    StatementPlan plan = repository.buildStatementPlan(table, StatementType.UPDATE,
+        repository.boundColumns(table, StatementType.UPDATE, values), new BitSet());
+    assertTrue(plan.getSql().endsWith("WHERE id = ?"));
+    assertEquals(-1, plan.getVersionColumn());
+  }
+
+  private void insert(String name, long version) throws SQLException {
+    try(Statement statement = connection.createStatement()) {
+      statement.execute("INSERT INTO account__c VALUES ('a0B000000000001', '" + name + "', " + version + ")");
+    }
+  }
+
+  private void assertRow(String name, long version) throws SQLException {
+    try(Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT name, ods_version FROM account__c")) {
+      assertTrue(rs.next());
+      assertEquals(name, rs.getString(1));
+      assertEquals(version, rs.getLong(2));
+    }
+  }
+
+  private static ChangeCaptureEvent event(Long createdTime) {
+    return ChangeCaptureEvent.builder()
+        .action("U")
+        .objectId("a0B000000000001")
+        .objectType("Account__c")
+        .createdTime(createdTime == null? null: new Date(createdTime))
+        .fullPayload(Map.of("id", "a0B000000000001", "name", "Acme"))
+        .build();
+  }
+
+  private static ColumnMetadata column(String name, String dataType, ColumnType columnType) {
+    return ColumnMetadata.builder().columnName(name).dataType(dataType).columnType(columnType).build();
+  }
+
+}
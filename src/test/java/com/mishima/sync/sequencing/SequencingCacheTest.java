@@ -0,0 +1,58 @@
+package com.mishima.sync.sequencing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class SequencingCacheTest {
+
+  private final AtomicInteger lookups = new AtomicInteger();
+  private final InMemorySequencingStore store = new InMemorySequencingStore(100, 60) {
+    @Override
+    public Map<String, RecordState> getStates(Collection<String> objectIds) {
+      lookups.incrementAndGet();
+      return super.getStates(objectIds);
+    }
+  };
+
+  @Test
+  public void testPrefetchedStatesNeedNoFurtherLookups() {
+    store.recordDeleted("a01", 200);
+    SequencingCache cache = new SequencingCache(store, 100, 60000);
+    cache.prefetch(List.of("a01", "a02", "a03"));
+    assertTrue(cache.get("a01").isDeleted());
+    assertNull(cache.get("a02"));
+    cache.recordApplied("a03", 100);
+    assertEquals(100, cache.get("a03").getVersion());
+    assertEquals(1, lookups.get());
+  }
+
+  @Test
+  public void testLaterStatesWinRegardlessOfOrder() {
+    SequencingCache cache = new SequencingCache(store, 100, 60000);
+    cache.recordDeleted("a01", 200);
+    cache.recordApplied("a01", 100);
+    assertTrue(cache.get("a01").isDeleted());
+    cache.recordApplied("a01", 300);
+    assertFalse(cache.get("a01").isDeleted());
+    cache.prefetch(List.of("a01"));
+    assertEquals(300, cache.get("a01").getVersion());
+    assertEquals(300, store.getStates(List.of("a01")).get("a01").getVersion());
+  }
+
+  @Test
+  public void testDeleteWinsOverChangeAtSameVersion() {
+    RecordState applied = new RecordState("a01", 100, false);
+    RecordState deleted = new RecordState("a01", 100, true);
+    assertEquals(deleted, RecordState.latest(applied, deleted));
+    assertEquals(deleted, RecordState.latest(deleted, applied));
+  }
+
+}
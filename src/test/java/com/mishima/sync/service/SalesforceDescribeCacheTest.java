@@ -0,0 +1,83 @@
+package com.mishima.sync.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.mishima.sync.model.SalesforceObjectDescribe;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.GsonHttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+
+public class SalesforceDescribeCacheTest {
+
+  private static final String LAST_MODIFIED = "Tue, 01 Oct 2019 10:00:00 GMT";
+
+  private HttpServer server;
+  private RestTemplate restTemplate;
+  private String baseUri;
+  private SalesforceDescribeCache describeCache;
+  private SalesforceObjectSchemaService service;
+  private final List<String> ifModifiedSince = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/services/data/v42.0/sobjects/Party__c/describe", exchange -> {
+      String since = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+      ifModifiedSince.add(since);
+      if(LAST_MODIFIED.equals(since)) {
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return;
+      }
+      byte[] bytes = "{\"name\":\"Party__c\",\"fields\":[{\"name\":\"Id\",\"type\":\"id\"}]}".getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try(OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.start();
+    restTemplate = new RestTemplate();
+    restTemplate.getMessageConverters().add(0, new GsonHttpMessageConverter());
+    baseUri = "http://localhost:" + server.getAddress().getPort();
+    describeCache = new SalesforceDescribeCache(10, 60);
+    service = new SalesforceObjectSchemaService(restTemplate, baseUri, describeCache, "integration@example.com");
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testCachedDescribeIsRevalidatedWithIfModifiedSince() {
+    SalesforceObjectDescribe first = service.extractSchemaForObject("Party__c");
+    SalesforceObjectDescribe second = service.extractSchemaForObject("Party__c");
+    assertEquals(2, ifModifiedSince.size());
+    assertNull(ifModifiedSince.get(0));
+    assertEquals(LAST_MODIFIED, ifModifiedSince.get(1));
+    assertEquals(first, second);
+    assertEquals("Id", second.getFields().get(0).getName());
+  }
+
+  @Test
+  public void testDescribeIsNotSharedBetweenUsers() {
+    service.extractSchemaForObject("Party__c");
+    new SalesforceObjectSchemaService(restTemplate, baseUri, describeCache, "reporting@example.com")
+        .extractSchemaForObject("Party__c");
+    assertEquals(2, ifModifiedSince.size());
+    assertNull(ifModifiedSince.get(1));
+  }
+
+}
@@ -0,0 +1,35 @@
+package com.mishima.sync.sqs;
+
+import static org.junit.Assert.assertEquals;
+
+import com.amazonaws.services.sqs.AbstractAmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+
+public class SqsMessageAcknowledgerTest {
+
+  @Test
+  public void testDeletesAreSentInBatchesOfTen() throws Exception {
+    List<DeleteMessageBatchRequest> requests = new CopyOnWriteArrayList<>();
+    AbstractAmazonSQS amazonSQS = new AbstractAmazonSQS() {
+      @Override
+      public DeleteMessageBatchResult deleteMessageBatch(DeleteMessageBatchRequest request) {
+        requests.add(request);
+        return new DeleteMessageBatchResult();
+      }
+    };
+    SqsMessageAcknowledger acknowledger = new SqsMessageAcknowledger(amazonSQS, "queue", 50);
+    for(int i = 0; i < 25; i++) {
+      acknowledger.acknowledge(new Message().withMessageId("id-" + i).withReceiptHandle("handle-" + i));
+    }
+    acknowledger.start();
+    acknowledger.stop();
+    assertEquals(3, requests.size());
+    assertEquals(25, requests.stream().mapToInt(request -> request.getEntries().size()).sum());
+  }
+
+}
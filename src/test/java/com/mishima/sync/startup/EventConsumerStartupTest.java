@@ -0,0 +1,158 @@
+package com.mishima.sync.startup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.mishima.sync.metrics.SyncMetrics;
+import com.mishima.sync.model.ChangeCaptureEvent;
+import com.mishima.sync.model.ColumnMetadata;
+import com.mishima.sync.model.ColumnType;
+import com.mishima.sync.model.TableMetadata;
+import com.mishima.sync.repository.OracleRepository;
+import com.mishima.sync.repository.OracleSchemaRegistry;
+import com.mishima.sync.sequencing.SequencingCache;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import javax.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class EventConsumerStartupTest {
+
+  private static final String OBJECT_ID = "a0B000000000001";
+
+  private final TableMetadata table = new TableMetadata("account__c", new TreeSet<>(List.of(
+      column("id", "varchar2", ColumnType.TEXT),
+      column("name", "varchar2", ColumnType.TEXT),
+      column("amount__c", "number", ColumnType.NUMBER),
+      column("ods_version", "number", ColumnType.NUMBER))));
+
+  private final EventConsumerStartup startup = new EventConsumerStartup();
+
+  private Connection connection;
+  private OracleRepository oracleRepository;
+  private SequencingCache sequencingCache;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:;MODE=Oracle");
+    try(Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE account__c (id VARCHAR2(18) PRIMARY KEY, name VARCHAR2(255), amount__c NUMBER,"
+          + " ods_version NUMBER)");
+    }
+    Session session = mock(Session.class);
+    when(session.doReturningWork(any())).thenAnswer(invocation ->
+        invocation.<ReturningWork<?>>getArgument(0).execute(connection));
+    EntityManager entityManager = mock(EntityManager.class);
+    when(entityManager.unwrap(Session.class)).thenReturn(session);
+    OracleSchemaRegistry oracleSchemaRegistry = mock(OracleSchemaRegistry.class);
+    when(oracleSchemaRegistry.getTable(anyString())).thenReturn(table);
+    oracleRepository = spy(new OracleRepository());
+    ReflectionTestUtils.setField(oracleRepository, "entityManager", entityManager);
+    ReflectionTestUtils.setField(oracleRepository, "oracleSchemaRegistry", oracleSchemaRegistry);
+    ReflectionTestUtils.setField(oracleRepository, "syncMetrics", mock(SyncMetrics.class));
+    ReflectionTestUtils.setField(oracleRepository, "deltaUpdatesEnabled", true);
+    ReflectionTestUtils.setField(startup, "oracleRepository", oracleRepository);
+    sequencingCache = mock(SequencingCache.class);
+    ReflectionTestUtils.setField(startup, "sequencingCache", sequencingCache);
+    ReflectionTestUtils.setField(startup, "syncMetrics", mock(SyncMetrics.class));
+    ReflectionTestUtils.setField(startup, "versionedWritesEnabled", true);
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void testVersionedUpdateOnlyWritesChangedFields() throws Exception {
+    try(Statement statement = connection.createStatement()) {
+      statement.execute("INSERT INTO account__c VALUES ('" + OBJECT_ID + "', 'Old', 5, 1000)");
+    }
+    startup.handleUpdate(update());
+    verify(oracleRepository, never()).doUpsert(any());
+    try(Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT name, amount__c, ods_version FROM account__c")) {
+      assertTrue(rs.next());
+      assertEquals("New", rs.getString(1));
+      assertEquals(5, rs.getInt(2));
+      assertEquals(2000L, rs.getLong(3));
+    }
+  }
+
+  @Test
+  public void testVersionedUpdateAheadOfItsRecordUpserts() throws Exception {
+    doReturn(1).when(oracleRepository).doUpsert(any());
+    ChangeCaptureEvent e = update();
+    startup.handleUpdate(e);
+    verify(oracleRepository).doUpsert(e);
+  }
+
+  @Test
+  public void testRolledBackWriteDoesNotMoveVersionOn() {
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      ReflectionTestUtils.invokeMethod(startup, "committed", update());
+      verifyZeroInteractions(sequencingCache);
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    verify(sequencingCache, never()).recordApplied(anyString(), anyLong());
+    verify(sequencingCache).invalidate(OBJECT_ID);
+  }
+
+  @Test
+  public void testCommittedWriteMovesVersionOn() {
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      ReflectionTestUtils.invokeMethod(startup, "committed", update());
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    verify(sequencingCache).recordApplied(OBJECT_ID, 2000L);
+  }
+
+  // The full payload leaves out the amount, which only the delta keeps as it is
+  private static ChangeCaptureEvent update() {
+    return ChangeCaptureEvent.builder()
+        .action("U")
+        .objectId(OBJECT_ID)
+        .objectType("Account__c")
+        .createdTime(new Date(2000L))
+        .newFieldValues(Map.of("name", "New"))
+        .fullPayload(Map.of("id", OBJECT_ID, "name", "New"))
+        .build();
+  }
+
+  private static ColumnMetadata column(String name, String dataType, ColumnType columnType) {
+    return ColumnMetadata.builder().columnName(name).dataType(dataType).columnType(columnType).build();
+  }
+
+}